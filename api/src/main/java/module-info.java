@@ -1,3 +1,5 @@
 module rocks.voss.musicsync.api {
+    requires transitive jdk.jfr;
+
     exports rocks.voss.musicsync.api;
 }
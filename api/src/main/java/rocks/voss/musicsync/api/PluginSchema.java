@@ -0,0 +1,16 @@
+package rocks.voss.musicsync.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the schema of a plugin, so the application can pick the plugins of the configured connections without
+ * instantiating all of them. Has to match {@link SyncPlugin#getSchema()}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface PluginSchema {
+    String value();
+}
@@ -0,0 +1,63 @@
+package rocks.voss.musicsync.api;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for an external process started by a plugin, e.g. ffprobe or a download script
+ */
+@Name("rocks.voss.musicsync.Process")
+@Label("External Process")
+@Category("MusicSync")
+@Description("External process started by a plugin")
+public class ProcessEvent extends jdk.jfr.Event {
+    @Label("Command")
+    private final String command;
+
+    @Label("Track Id")
+    private final String trackId;
+
+    @Label("Exit Code")
+    private int exitCode = -1;
+
+    @Label("Bytes")
+    @DataAmount
+    private long bytes;
+
+    @Label("Timed Out")
+    private boolean timedOut;
+
+    @Label("Queued")
+    @Description("Time the process waited for a free slot of its tool")
+    @Timespan(Timespan.MILLISECONDS)
+    private long queued;
+
+    /**
+     * @param command name of the executable
+     * @param trackId of the track the process works on
+     */
+    public ProcessEvent(String command, String trackId) {
+        this.command = command;
+        this.trackId = trackId;
+    }
+
+    public void setExitCode(int exitCode) {
+        this.exitCode = exitCode;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public void setTimedOut(boolean timedOut) {
+        this.timedOut = timedOut;
+    }
+
+    public void setQueued(long queued) {
+        this.queued = queued;
+    }
+}
@@ -0,0 +1,71 @@
+package rocks.voss.musicsync.api;
+
+/**
+ * Outcome of an external process started by the {@link ProcessRunner}
+ */
+public class ProcessResult {
+    private final int exitCode;
+    private final boolean timedOut;
+    private final String stdout;
+    private final String stderr;
+    private final long queued;
+    private final long duration;
+
+    public ProcessResult(int exitCode, boolean timedOut, String stdout, String stderr, long queued, long duration) {
+        this.exitCode = exitCode;
+        this.timedOut = timedOut;
+        this.stdout = stdout;
+        this.stderr = stderr;
+        this.queued = queued;
+        this.duration = duration;
+    }
+
+    /**
+     * @return true if the process finished in time with exit code 0
+     */
+    public boolean isSuccess() {
+        return !timedOut && exitCode == 0;
+    }
+
+    /**
+     * @return exit code of the process, the one of the killed process if it timed out
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return true if the process was killed because it exceeded its timeout
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return standard output of the process, cut off after the first 64 KiB
+     */
+    public String getStdout() {
+        return stdout;
+    }
+
+    /**
+     * @return standard error of the process, cut off after the first 64 KiB
+     */
+    public String getStderr() {
+        return stderr;
+    }
+
+    /**
+     * @return milliseconds the process waited for a free slot of its tool
+     */
+    public long getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return milliseconds the process ran
+     */
+    public long getDuration() {
+        return duration;
+    }
+}
@@ -0,0 +1,181 @@
+package rocks.voss.musicsync.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Runs external processes of the plugins, e.g. ffprobe or a download script. The command is passed as arguments
+ * without a shell, so file names need no quoting. Every tool has a limit of processes running at the same time,
+ * shared by all connections, further processes wait for a free slot. A process which exceeds its timeout is killed
+ * together with all processes it started. Standard output & error are read while the process runs, so it never blocks
+ * on a full pipe. Every process is recorded as a {@link ProcessEvent}.
+ */
+public final class ProcessRunner {
+    final private static int MAX_OUTPUT = 64 * 1024;
+    // output of processes which left children behind is not waited for longer
+    final private static long DRAIN_TIMEOUT = 1000;
+
+    private static final Map<String, Tool> tools = new ConcurrentHashMap<>();
+    private static final ExecutorService drainers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "process-output");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ProcessRunner() {
+    }
+
+    /**
+     * Sets the limits of a tool, processes which are already running or waiting keep the previous limits
+     *
+     * @param tool        name of the executable, without its path
+     * @param concurrency processes of the tool running at the same time
+     * @param timeout     milliseconds a process of the tool may run, 0 for no timeout
+     */
+    public static void configure(String tool, int concurrency, long timeout) {
+        tools.put(tool, new Tool(Math.max(concurrency, 1), Math.max(timeout, 0)));
+    }
+
+    /**
+     * Runs a process within the timeout of its tool
+     *
+     * @param trackId of the track the process works on
+     * @param command executable & its arguments
+     * @throws IOException          if the process could not be started
+     * @throws InterruptedException if the thread was interrupted, the process is killed then
+     */
+    public static ProcessResult run(String trackId, String... command) throws IOException, InterruptedException {
+        return run(trackId, getTool(command[0]).timeout, null, command);
+    }
+
+    /**
+     * Runs a process within the given timeout
+     *
+     * @param trackId of the track the process works on
+     * @param timeout milliseconds the process may run, 0 for no timeout
+     * @param output  file the process writes, its size is recorded, null if none
+     * @param command executable & its arguments
+     * @throws IOException          if the process could not be started
+     * @throws InterruptedException if the thread was interrupted, the process is killed then
+     */
+    public static ProcessResult run(String trackId, long timeout, File output, String... command) throws IOException, InterruptedException {
+        String name = new File(command[0]).getName();
+        Tool tool = getTool(command[0]);
+        long waiting = System.nanoTime();
+        tool.permits.acquire();
+        try {
+            long queued = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waiting);
+            ProcessEvent event = new ProcessEvent(name, trackId);
+            event.setQueued(queued);
+            event.begin();
+            long started = System.nanoTime();
+            Process process = new ProcessBuilder(command).start();
+            process.getOutputStream().close();
+            Output stdout = drain(process.getInputStream());
+            Output stderr = drain(process.getErrorStream());
+
+            boolean timedOut = false;
+            try {
+                if (timeout > 0) {
+                    timedOut = !process.waitFor(timeout, TimeUnit.MILLISECONDS);
+                } else {
+                    process.waitFor();
+                }
+            } catch (InterruptedException e) {
+                kill(process);
+                throw e;
+            }
+            if (timedOut) {
+                kill(process);
+            }
+            int exitCode = process.waitFor();
+            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+            event.setExitCode(exitCode);
+            event.setTimedOut(timedOut);
+            if (output != null) {
+                event.setBytes(output.length());
+            }
+            event.commit();
+            return new ProcessResult(exitCode, timedOut, stdout.get(), stderr.get(), queued, duration);
+        } finally {
+            tool.permits.release();
+        }
+    }
+
+    private static Tool getTool(String executable) {
+        return tools.computeIfAbsent(new File(executable).getName(), key -> new Tool(Runtime.getRuntime().availableProcessors(), 0));
+    }
+
+    private static void kill(Process process) {
+        // the children are looked up first, once the process is gone they are not its descendants anymore
+        List<ProcessHandle> descendants = process.descendants().collect(Collectors.toList());
+        process.destroyForcibly();
+        descendants.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    private static Output drain(InputStream stream) {
+        Output output = new Output(stream);
+        drainers.execute(output);
+        return output;
+    }
+
+    private static class Tool {
+        private final Semaphore permits;
+        private final long timeout;
+
+        Tool(int concurrency, long timeout) {
+            this.permits = new Semaphore(concurrency, true);
+            this.timeout = timeout;
+        }
+    }
+
+    /**
+     * Reads a stream of the process until it is closed and keeps the beginning of it
+     */
+    private static class Output implements Runnable {
+        private final InputStream stream;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        Output(InputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[8192];
+            try (stream) {
+                int read;
+                while ((read = stream.read(buffer)) >= 0) {
+                    synchronized (bytes) {
+                        bytes.write(buffer, 0, Math.max(Math.min(read, MAX_OUTPUT - bytes.size()), 0));
+                    }
+                }
+            } catch (IOException e) {
+                // the stream is closed together with the process
+            } finally {
+                done.countDown();
+            }
+        }
+
+        String get() throws InterruptedException {
+            done.await(DRAIN_TIMEOUT, TimeUnit.MILLISECONDS);
+            synchronized (bytes) {
+                return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+}
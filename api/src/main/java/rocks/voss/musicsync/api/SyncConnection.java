@@ -23,6 +23,16 @@ public interface SyncConnection {
      */
     Object getInputConfig();
 
+    /**
+     * Configuration for the input plugin, bound to the configuration class of the plugin
+     *
+     * @param type configuration class of the input plugin
+     * @return bound configuration
+     */
+    default <T> T getInputConfig(Class<T> type) {
+        return type.cast(getInputConfig());
+    }
+
     /**
      * Input schema for the connection which will be used to determine the Sync Output Plugin
      *
@@ -44,6 +54,34 @@ public interface SyncConnection {
      */
     Object getOutputConfig();
 
+    /**
+     * Configuration for the output plugin, bound to the configuration class of the plugin
+     *
+     * @param type configuration class of the output plugin
+     * @return bound configuration
+     */
+    default <T> T getOutputConfig(Class<T> type) {
+        return type.cast(getOutputConfig());
+    }
+
+    /**
+     * Bandwidth limit of the output, shared with all connections writing to the same output plugin
+     *
+     * @return throttle the output plugin has to call before transferring bytes
+     */
+    default SyncThrottle getThrottle() {
+        return SyncThrottle.UNLIMITED;
+    }
+
+    /**
+     * Priority of the connection, connections with a higher priority are synced first when several are waiting
+     *
+     * @return priority, 0 by default
+     */
+    default int getPriority() {
+        return 0;
+    }
+
     /**
      * Describing the connection by a meaningful name
      *
@@ -0,0 +1,53 @@
+package rocks.voss.musicsync.api;
+
+/**
+ * Thrown by plugins if a single track could not be downloaded or uploaded. The track is retried later with backoff,
+ * the other tracks of the connection are synced anyway. Without a track the whole connection failed, e.g. the target
+ * could not be written, then the sync of the connection fails and nothing of the failed call counts as synced.
+ */
+public class SyncException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient SyncTrack track;
+
+    /**
+     * @param message describing the failure of the connection
+     */
+    public SyncException(String message) {
+        this(null, message);
+    }
+
+    /**
+     * @param message describing the failure of the connection
+     * @param cause   of the failure
+     */
+    public SyncException(String message, Throwable cause) {
+        this(null, message, cause);
+    }
+
+    /**
+     * @param track   which failed
+     * @param message describing the failure
+     */
+    public SyncException(SyncTrack track, String message) {
+        super(message);
+        this.track = track;
+    }
+
+    /**
+     * @param track   which failed
+     * @param message describing the failure
+     * @param cause   of the failure
+     */
+    public SyncException(SyncTrack track, String message, Throwable cause) {
+        super(message, cause);
+        this.track = track;
+    }
+
+    /**
+     * @return track which failed, null if the whole connection failed
+     */
+    public SyncTrack getTrack() {
+        return track;
+    }
+}
@@ -10,4 +10,33 @@ public interface SyncInputPlugin extends SyncPlugin {
      * @return list of tracks
      */
     List<SyncTrack> getTracklist(SyncConnection connection);
+
+    /**
+     * Get a cheap fingerprint of the track list, which changes whenever the track list changes
+     *
+     * @param connection for which to get the fingerprint
+     * @return fingerprint or null if not supported
+     */
+    default String getTracklistFingerprint(SyncConnection connection) {
+        return null;
+    }
+
+    /**
+     * Watch the input of the connection for changes, so it does not need to be polled
+     *
+     * @param connection to watch
+     * @param trigger    to call whenever the input of the connection changed
+     * @return true if the input is watched, false if not supported
+     */
+    default boolean watch(SyncConnection connection, SyncTrigger trigger) {
+        return false;
+    }
+
+    /**
+     * Stop watching the input of the connection, e.g. because the connection was removed from the configuration
+     *
+     * @param connection which was passed to {@link #watch(SyncConnection, SyncTrigger)}
+     */
+    default void unwatch(SyncConnection connection) {
+    }
 }
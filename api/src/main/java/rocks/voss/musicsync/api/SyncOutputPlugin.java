@@ -4,10 +4,13 @@ import java.util.List;
 
 public interface SyncOutputPlugin extends SyncPlugin {
     /**
-     * Upload a full list of tracks
+     * Upload a list of tracks at once, a sync in bulk mode calls it once per chunk of the tracks to add. The tracks
+     * should be committed on target destination before returning, so a sync which stops keeps the chunks so far
      *
      * @param connection to target destination
      * @param syncTracks is a list of tracks
+     * @throws SyncException if a track could not be uploaded, the tracks before it in the list were uploaded. Without
+     *                       a track if the list could not be committed, none of the tracks count as uploaded then
      */
     void uploadTracks(SyncConnection connection, List<SyncTrack> syncTracks);
 
@@ -16,6 +19,7 @@ public interface SyncOutputPlugin extends SyncPlugin {
      *
      * @param connection to target destination
      * @param syncTrack  is a track to be uploaded
+     * @throws SyncException if the track could not be uploaded, without a track if the target could not be written
      */
     void uploadTrack(SyncConnection connection, SyncTrack syncTrack);
 
@@ -36,6 +40,17 @@ public interface SyncOutputPlugin extends SyncPlugin {
      */
     void orderTracks(SyncConnection connection, List<SyncTrack> syncTracks);
 
+    /**
+     * Check if {@link #orderTracks(SyncConnection, List)} can change the order on target destination. Plugins whose
+     * order follows from the track keys, e.g. file names starting with the track number, return false, their plans
+     * never report a reorder then.
+     *
+     * @return true if the plugin orders the tracks on target destination
+     */
+    default boolean canOrderTracks() {
+        return true;
+    }
+
     /**
      * to target destination
      *
@@ -43,4 +58,51 @@ public interface SyncOutputPlugin extends SyncPlugin {
      * @param syncTracks list of all Tracks, track which are not in the list will be removed
      */
     void cleanUpTracks(SyncConnection connection, List<SyncTrack> syncTracks);
+
+    /**
+     * Get the tracks which are managed by the plugin on target destination, used to compute a {@link SyncPlan}
+     *
+     * @param connection to target destination
+     * @return tracks in their current order on target destination, null if sync plans are not supported
+     */
+    default List<SyncTargetTrack> getTargetTracks(SyncConnection connection) {
+        return null;
+    }
+
+    /**
+     * Key of a track on target destination, must match {@link SyncTargetTrack#getKey()} of the uploaded track
+     *
+     * @param syncTrack track of the input
+     * @return key of the track
+     */
+    default String getTrackKey(SyncTrack syncTrack) {
+        return syncTrack.getId();
+    }
+
+    /**
+     * Check if a track on target destination is still a valid copy of the input track
+     *
+     * @param connection  to target destination
+     * @param syncTrack   track of the input
+     * @param targetTrack track on target destination with the same key
+     * @return true if the track does not need re-uploading
+     */
+    default boolean isTargetTrackValid(SyncConnection connection, SyncTrack syncTrack, SyncTargetTrack targetTrack) {
+        return true;
+    }
+
+    /**
+     * Remove the tracks of {@link SyncPlan#getToRemove()} and order the remaining tracks on target destination.
+     * Tracks of {@link SyncPlan#getToAdd()} are uploaded afterwards.
+     *
+     * @param connection to target destination
+     * @param plan       computed for the connection
+     * @throws SyncException without a track if the plan could not be applied, the sync fails and is retried
+     */
+    default void applySyncPlan(SyncConnection connection, SyncPlan plan) {
+        cleanUpTracks(connection, plan.getUnchanged());
+        if (plan.isReorder()) {
+            orderTracks(connection, plan.getUnchanged());
+        }
+    }
 }
@@ -0,0 +1,72 @@
+package rocks.voss.musicsync.api;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Changes which bring the target destination of a connection in line with its input, computed by the application
+ * from the input tracks & the tracks on the target destination and handed to
+ * {@link SyncOutputPlugin#applySyncPlan(SyncConnection, SyncPlan)}
+ */
+public class SyncPlan {
+    private final List<SyncTrack> tracks;
+    private final List<SyncTrack> toAdd;
+    private final List<SyncTargetTrack> toRemove;
+    private final List<SyncTrack> unchanged;
+    private final boolean reorder;
+
+    public SyncPlan(List<SyncTrack> tracks, List<SyncTrack> toAdd, List<SyncTargetTrack> toRemove, List<SyncTrack> unchanged, boolean reorder) {
+        this.tracks = Collections.unmodifiableList(tracks);
+        this.toAdd = Collections.unmodifiableList(toAdd);
+        this.toRemove = Collections.unmodifiableList(toRemove);
+        this.unchanged = Collections.unmodifiableList(unchanged);
+        this.reorder = reorder;
+    }
+
+    /**
+     * @return full list of tracks of the input in order
+     */
+    public List<SyncTrack> getTracks() {
+        return tracks;
+    }
+
+    /**
+     * @return tracks which need to be uploaded to the target destination
+     */
+    public List<SyncTrack> getToAdd() {
+        return toAdd;
+    }
+
+    /**
+     * @return tracks on the target destination which need to be removed
+     */
+    public List<SyncTargetTrack> getToRemove() {
+        return toRemove;
+    }
+
+    /**
+     * @return tracks which are already on the target destination and stay there, in input order
+     */
+    public List<SyncTrack> getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @return true if the unchanged tracks are not in input order on the target destination
+     */
+    public boolean isReorder() {
+        return reorder;
+    }
+
+    /**
+     * @return true if nothing needs to be done on the target destination
+     */
+    public boolean isEmpty() {
+        return toAdd.isEmpty() && toRemove.isEmpty() && !reorder;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncPlan [add=" + toAdd.size() + ", remove=" + toRemove.size() + ", unchanged=" + unchanged.size() + ", reorder=" + reorder + "]";
+    }
+}
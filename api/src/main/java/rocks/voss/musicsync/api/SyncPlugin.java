@@ -40,4 +40,23 @@ public interface SyncPlugin {
      * @return input for the help screen
      */
     String helpScreen();
+
+    /**
+     * Class of the per-connection configuration of the plugin. The configuration of each connection is bound to this
+     * class and validated once when the connections are loaded.
+     *
+     * @return configuration class, null if the plugin has no per-connection configuration
+     */
+    default Class<?> getConnectionConfigurationClass() {
+        return null;
+    }
+
+    /**
+     * Validates the bound per-connection configuration
+     *
+     * @param configuration of a connection, instance of {@link #getConnectionConfigurationClass()}
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    default void validateConnectionConfiguration(Object configuration) {
+    }
 }
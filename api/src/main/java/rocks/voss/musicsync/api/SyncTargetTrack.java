@@ -0,0 +1,44 @@
+package rocks.voss.musicsync.api;
+
+public class SyncTargetTrack {
+    private final String key;
+    private final int trackDuration;
+    private final Object target;
+
+    /**
+     * @param key           identifies the track on the target destination, see {@link SyncOutputPlugin#getTrackKey(SyncTrack)}
+     * @param trackDuration length of the track on the target destination in ms, -1 if unknown
+     * @param target        plugin specific object of the track on the target destination
+     */
+    public SyncTargetTrack(String key, int trackDuration, Object target) {
+        this.key = key;
+        this.trackDuration = trackDuration;
+        this.target = target;
+    }
+
+    /**
+     * @return key which identifies the track on the target destination
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return length of the track on the target destination in ms, -1 if unknown
+     */
+    public int getTrackDuration() {
+        return trackDuration;
+    }
+
+    /**
+     * @return plugin specific object of the track on the target destination
+     */
+    public Object getTarget() {
+        return target;
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
@@ -0,0 +1,18 @@
+package rocks.voss.musicsync.api;
+
+public interface SyncThrottle {
+    /**
+     * Throttle which never waits
+     */
+    SyncThrottle UNLIMITED = bytes -> {
+    };
+
+    /**
+     * Waits until the bytes fit into the bandwidth of the output. Plugins call it right before transferring the bytes,
+     * large transfers should ask for their bytes in chunks.
+     *
+     * @param bytes which are about to be transferred
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    void acquire(long bytes) throws InterruptedException;
+}
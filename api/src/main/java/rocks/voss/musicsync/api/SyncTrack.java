@@ -43,6 +43,7 @@ public interface SyncTrack {
 
     /**
      * @return path to file in filesystem where track is stored
+     * @throws SyncException if the track could not be downloaded
      */
     String getPath();
 
@@ -0,0 +1,10 @@
+package rocks.voss.musicsync.api;
+
+public interface SyncTrigger {
+    /**
+     * Requests a sync of the connection as soon as possible
+     *
+     * @param connection which changed
+     */
+    void trigger(SyncConnection connection);
+}
@@ -4,7 +4,7 @@ module rocks.voss.musicsync.application {
     requires org.apache.commons.lang3;
     requires org.apache.logging.log4j;
     requires org.apache.logging.log4j.core;
-    requires org.reflections;
+    requires jdk.httpserver;
     requires rocks.voss.jsonhelper;
 
     exports rocks.voss.musicsync.application;
@@ -6,15 +6,21 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.LoggerContext;
 import rocks.voss.jsonhelper.JSONHelper;
 import rocks.voss.musicsync.api.SyncConnection;
-import rocks.voss.musicsync.api.SyncInputPlugin;
-import rocks.voss.musicsync.api.SyncOutputPlugin;
-import rocks.voss.musicsync.api.SyncTrack;
 import rocks.voss.musicsync.application.config.Configuration;
 import rocks.voss.musicsync.application.config.SyncConfiguration;
+import rocks.voss.musicsync.application.engine.BandwidthLimiter;
+import rocks.voss.musicsync.application.engine.ConnectionExecutor;
+import rocks.voss.musicsync.application.engine.ConnectionLeases;
+import rocks.voss.musicsync.application.engine.Deadline;
+import rocks.voss.musicsync.application.engine.SyncEngine;
+import rocks.voss.musicsync.application.engine.SyncScheduler;
+import rocks.voss.musicsync.application.engine.Tuning;
+import rocks.voss.musicsync.application.http.ControlServer;
 import rocks.voss.musicsync.application.impl.SyncConnectionImpl;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -25,7 +31,7 @@ public class Application {
     final private static Logger log = LogManager.getLogger(Application.class);
 
     public static void main(String[] args) throws Exception {
-        // load plugins within classpath & modules
+        // discover plugins, they are initialized on first use
         PluginLoader.loadPlugins();
 
         // load logger configuration if log4j2 file is present in local directory
@@ -37,8 +43,9 @@ public class Application {
 
         // check for command line arguments
         String configFile = "musicsync.json";
+        String instance = System.getenv("MUSICSYNC_INSTANCE");
         for (int i = 0; i < args.length; i++) {
-            String arg = args[0];
+            String arg = args[i];
             if (StringUtils.equals(arg, "--help")) {
                 printHelp();
             }
@@ -49,6 +56,13 @@ public class Application {
                     configFile = null;
                 }
             }
+            if (StringUtils.equals(arg, "--instance")) {
+                if (i + 1 < args.length) {
+                    instance = args[++i];
+                } else {
+                    printHelp();
+                }
+            }
         }
 
         // Help screen in case configFile is empty or not set
@@ -65,89 +79,58 @@ public class Application {
             printHelp();
         }
 
-        // go into sync loop
+        // limit the bandwidth of the outputs
+        BandwidthLimiter.configure(config.getGeneral().getBandwidth());
+
+        // sync once or schedule the connections
         List<SyncConnection> connections = getConnections(config);
-        while (true) {
-            try {
-                sync(config, connections);
-                var timeout = config.getGeneral().getTimeout();
-                if (timeout <= 0) {
-                    log.info("Done");
-                    break;
-                }
-                log.info("Taking a nap for: " + timeout + " seconds.");
-                Thread.sleep(timeout * 1000);
-                log.debug("Up again");
-            } catch (Exception e) {
-                log.error("Exception", e);
-            }
+        boolean oneShot = config.getGeneral().getTimeout() <= 0;
+        ConnectionLeases leases = joinCluster(config, instance, oneShot);
+        Tuning tuning = Tuning.detect(config.getGeneral());
+        SyncEngine engine = new SyncEngine(config.getGeneral(), tuning, leases);
+        ConnectionExecutor executor = new ConnectionExecutor(config.getGeneral(), tuning, engine.getOrder());
+        engine.warmUp(connections);
+        if (oneShot) {
+            Deadline cycle = Deadline.after(config.getGeneral().getBudget().getCycle());
+            executor.execute(connections, connection -> engine.sync(connection, cycle));
+            log.info("Done");
+            executor.shutdown();
+            leases.shutdown();
+            return;
         }
-    }
-
-    private static void sync(Configuration config, List<SyncConnection> connections) {
-        for (SyncConnection connection : connections) {
-            try {
-                SyncInputPlugin inputPlugin = connection.getSyncInputPlugin();
-                SyncOutputPlugin outputPlugin = connection.getSyncOutputPlugin();
-
-                log.info("Working on connection: " + connection.getName());
-
-                if (inputPlugin == null || outputPlugin == null) {
-                    log.error("One is null\nInputPlugin: " + inputPlugin + ", outputPlugin: " + outputPlugin);
-                    continue;
-                }
-
-                inputPlugin.establishConnection();
-                outputPlugin.establishConnection();
-
-                if (config.getGeneral().isBulk()) {
-                    syncBulk(connection);
-                } else {
-                    syncItemized(connection);
-                }
-
-                inputPlugin.closeConnection();
-                outputPlugin.closeConnection();
-            } catch (Exception e) {
-                log.error("Exception", e);
-            }
+        SyncScheduler scheduler = new SyncScheduler(config.getGeneral(), executor, engine::sync);
+        leases.setListener(scheduler::requestSync);
+        if (config.getGeneral().getHttp().getPort() > 0) {
+            new ControlServer(config.getGeneral().getHttp(), engine, scheduler).start();
         }
-    }
-
-    private static void syncItemized(SyncConnection connection) {
-        SyncInputPlugin inputPlugin = connection.getSyncInputPlugin();
-        SyncOutputPlugin outputPlugin = connection.getSyncOutputPlugin();
-
-        List<SyncTrack> tracks = inputPlugin.getTracklist(connection);
-        outputPlugin.cleanUpTracks(connection, tracks);
-        for (SyncTrack track : tracks) {
-            if (!outputPlugin.isTrackUploaded(connection, track)) {
-                outputPlugin.uploadTrack(connection, track);
-            }
+        if (config.getGeneral().isReload()) {
+            new ConfigReloader(new File(configFile), config, connections, scheduler, engine).start();
         }
-        outputPlugin.orderTracks(connection, tracks);
+        scheduler.run(connections);
     }
 
-    private static void syncBulk(SyncConnection connection) {
-        SyncInputPlugin inputPlugin = connection.getSyncInputPlugin();
-        SyncOutputPlugin outputPlugin = connection.getSyncOutputPlugin();
-
-        List<SyncTrack> tracks = inputPlugin.getTracklist(connection);
-        List<SyncTrack> tracksToSync = new ArrayList<>();
-        for (SyncTrack track : tracks) {
-            if (!outputPlugin.isTrackUploaded(connection, track)) {
-                tracksToSync.add(track);
-            }
+    /**
+     * Registers this instance in the cluster directory, if one is configured
+     */
+    private static ConnectionLeases joinCluster(Configuration config, String instance, boolean oneShot) {
+        if (StringUtils.isBlank(instance)) {
+            instance = ConnectionLeases.getHost();
+        }
+        try {
+            ConnectionLeases leases = new ConnectionLeases(config.getGeneral().getCluster(), instance, !oneShot);
+            leases.start();
+            return leases;
+        } catch (IllegalArgumentException | IllegalStateException | IOException e) {
+            log.error("Could not join cluster: " + e.getMessage());
+            exit(1);
+            return null;
         }
-        outputPlugin.cleanUpTracks(connection, tracks);
-        outputPlugin.uploadTracks(connection, tracksToSync);
-        outputPlugin.orderTracks(connection, tracks);
     }
 
     private static List<SyncConnection> getConnections(Configuration config) {
         List<SyncConnection> connections = new ArrayList<>();
         for (SyncConfiguration connectionWrapperBean : config.getConnections()) {
-            connections.add(SyncConnectionImpl.createBy(connectionWrapperBean.getName(), connectionWrapperBean.getIn(), connectionWrapperBean.getOut()));
+            connections.add(SyncConnectionImpl.bind(connectionWrapperBean));
         }
         return connections;
     }
@@ -156,6 +139,7 @@ public class Application {
         StringBuilder help = new StringBuilder("Usage: musicsync\n");
         help.append("--help\n\t\tThis help screen\n");
         help.append("--file|-f FILE\n\t\tDefine a JSON file which shall be used for configuration\n");
+        help.append("--instance NAME\n\t\tName of this instance in a cluster, defaults to $MUSICSYNC_INSTANCE or the host name\n");
         PluginLoader.getHelpMessages(help);
         System.out.print(help);
         exit(0);
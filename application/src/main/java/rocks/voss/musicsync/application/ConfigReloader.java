@@ -0,0 +1,241 @@
+package rocks.voss.musicsync.application;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.jsonhelper.JSONHelper;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncPlugin;
+import rocks.voss.musicsync.application.config.Configuration;
+import rocks.voss.musicsync.application.config.SyncConfiguration;
+import rocks.voss.musicsync.application.engine.SyncEngine;
+import rocks.voss.musicsync.application.engine.SyncScheduler;
+import rocks.voss.musicsync.application.impl.SyncConnectionImpl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches the configuration file of the running daemon and applies changes of the plugins and connections without
+ * a restart. Only connections which were added, removed or changed and connections of plugins whose configuration
+ * changed are touched, all other plugins keep their instances, sessions and caches. A sync which is running while
+ * the configuration changes finishes with the previous version of its connection.
+ */
+public class ConfigReloader {
+    final private static Logger log = LogManager.getLogger(ConfigReloader.class);
+    final private static long DEBOUNCE = 1000;
+
+    private final File file;
+    private final SyncScheduler scheduler;
+    private final SyncEngine engine;
+    private final ScheduledExecutorService debouncer;
+    private final Map<String, SyncConnection> connections = new LinkedHashMap<>();
+    // configuration of the connections as they are applied, a connection with an invalid change keeps its previous one
+    private final Map<String, SyncConfiguration> connectionConfigs;
+    private Configuration config;
+    private ScheduledFuture<?> pending;
+
+    public ConfigReloader(File file, Configuration config, List<SyncConnection> connections, SyncScheduler scheduler, SyncEngine engine) {
+        this.file = file.getAbsoluteFile();
+        this.config = config;
+        this.scheduler = scheduler;
+        this.engine = engine;
+        this.connectionConfigs = getConnectionConfigs(config);
+        this.debouncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "config-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (SyncConnection connection : connections) {
+            this.connections.put(connection.getName(), connection);
+        }
+    }
+
+    public void start() throws IOException {
+        // editors often replace the file instead of writing it, so the folder is watched
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        file.getParentFile().toPath().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        Thread thread = new Thread(() -> run(watchService), "config-watch");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching configuration file: " + file);
+    }
+
+    private void run(WatchService watchService) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path && file.getName().equals(event.context().toString())) {
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    changed();
+                }
+                if (!key.reset()) {
+                    log.error("Folder of the configuration file is not accessible anymore, stop watching it");
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("Stop watching configuration file");
+        }
+    }
+
+    private synchronized void changed() {
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = debouncer.schedule(() -> {
+            // the future of the task is never read, so a failure would not show up anywhere
+            try {
+                reload();
+            } catch (RuntimeException e) {
+                log.error("Could not reload configuration", e);
+            }
+        }, DEBOUNCE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads the configuration file again and applies the differences to the running daemon
+     */
+    public synchronized void reload() {
+        Configuration reloaded;
+        try (InputStream jsonStream = new FileInputStream(file)) {
+            reloaded = JSONHelper.createBean(Configuration.class, jsonStream);
+        } catch (Exception e) {
+            log.error("Could not read configuration file, keeping the current configuration", e);
+            return;
+        }
+        if (Objects.equals(config, reloaded)) {
+            log.debug("Configuration file did not change");
+            return;
+        }
+        log.info("Configuration file changed, reloading");
+        if (!Objects.equals(config.getGeneral(), reloaded.getGeneral())) {
+            log.error("Changes of the general configuration require a restart, they are ignored until then");
+        }
+
+        PluginLoader.Staging plugins = PluginLoader.stage(reloaded);
+        Set<String> changedPlugins = plugins.getChanged();
+        Map<String, SyncConfiguration> next = getConnectionConfigs(reloaded);
+
+        // all added & changed connections are bound before anything is applied, so a failing one can not leave the
+        // reload half done
+        Map<String, SyncConnectionImpl> bound = new LinkedHashMap<>();
+        for (SyncConfiguration connectionConfig : next.values()) {
+            String name = connectionConfig.getName();
+            SyncConnection previous = connections.get(name);
+            if (previous != null && Objects.equals(connectionConfigs.get(name), connectionConfig) && !usesPlugin(connectionConfig, changedPlugins)) {
+                continue;
+            }
+            try {
+                // a running sync keeps the previous connection, the changes are bound into a new one
+                bound.put(name, SyncConnectionImpl.bind(connectionConfig, plugins));
+            } catch (IllegalArgumentException e) {
+                log.error(previous != null ? e.getMessage() + ", keeping the previous version of connection: " + name : e.getMessage());
+            } catch (RuntimeException e) {
+                log.error(previous != null ? "Could not bind connection, keeping its previous version: " + name : "Could not bind connection: " + name, e);
+            }
+        }
+
+        PluginLoader.apply(plugins);
+        Set<SyncPlugin> retired = new HashSet<>();
+        List<SyncConnection> started = new ArrayList<>();
+
+        for (String name : new ArrayList<>(connectionConfigs.keySet())) {
+            if (!next.containsKey(name)) {
+                log.info("Removing connection: " + name);
+                connectionConfigs.remove(name);
+                SyncConnection connection = connections.remove(name);
+                scheduler.remove(name);
+                engine.release(name);
+                retire(connection, changedPlugins, retired);
+            }
+        }
+
+        for (SyncConnectionImpl connection : bound.values()) {
+            String name = connection.getName();
+            SyncConnection previous = connections.get(name);
+            SyncConfiguration previousConfig = connectionConfigs.get(name);
+            SyncConfiguration connectionConfig = next.get(name);
+
+            connections.put(name, connection);
+            connectionConfigs.put(name, connectionConfig);
+            started.add(connection);
+            if (previous == null) {
+                log.info("Adding connection: " + name);
+                scheduler.add(connection);
+                continue;
+            }
+            log.info("Replacing connection: " + name);
+            if (!Objects.equals(previousConfig.getIn(), connectionConfig.getIn()) || !Objects.equals(previousConfig.getOut(), connectionConfig.getOut())) {
+                // the journal only knows the previous input & output of the connection
+                engine.forget(name);
+            }
+            scheduler.replace(connection);
+            retire(previous, changedPlugins, retired);
+        }
+
+        // connections which kept their previous version still use their plugins
+        for (SyncConnection connection : connections.values()) {
+            retired.remove(connection.getSyncInputPlugin());
+            retired.remove(connection.getSyncOutputPlugin());
+        }
+        for (SyncPlugin plugin : retired) {
+            engine.retire(plugin);
+        }
+        config = reloaded;
+        engine.warmUp(started);
+    }
+
+    private static void retire(SyncConnection connection, Set<String> changedPlugins, Set<SyncPlugin> retired) {
+        if (connection == null) {
+            return;
+        }
+        if (changedPlugins.contains(connection.getInputSchema()) && connection.getSyncInputPlugin() != null) {
+            retired.add(connection.getSyncInputPlugin());
+        }
+        if (changedPlugins.contains(connection.getOutputSchema()) && connection.getSyncOutputPlugin() != null) {
+            retired.add(connection.getSyncOutputPlugin());
+        }
+    }
+
+    private static boolean usesPlugin(SyncConfiguration connectionConfig, Set<String> plugins) {
+        return connectionConfig.getIn() != null && plugins.contains(connectionConfig.getIn().getPlugin())
+                || connectionConfig.getOut() != null && plugins.contains(connectionConfig.getOut().getPlugin());
+    }
+
+    private static Map<String, SyncConfiguration> getConnectionConfigs(Configuration config) {
+        Map<String, SyncConfiguration> configs = new LinkedHashMap<>();
+        if (config.getConnections() != null) {
+            for (SyncConfiguration connectionConfig : config.getConnections()) {
+                configs.putIfAbsent(connectionConfig.getName(), connectionConfig);
+            }
+        }
+        return configs;
+    }
+}
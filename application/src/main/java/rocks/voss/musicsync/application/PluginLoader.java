@@ -1,82 +1,266 @@
 package rocks.voss.musicsync.application;
 
-import lombok.Getter;
 import org.apache.commons.lang3.StringUtils;
-import org.reflections.Reflections;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.PluginSchema;
 import rocks.voss.musicsync.api.SyncInputPlugin;
 import rocks.voss.musicsync.api.SyncOutputPlugin;
 import rocks.voss.musicsync.api.SyncPlugin;
 import rocks.voss.musicsync.application.config.Configuration;
 import rocks.voss.musicsync.application.config.PluginConfiguration;
+import rocks.voss.musicsync.application.metrics.PluginMetrics;
 
-import java.lang.reflect.InvocationTargetException;
-import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.Objects;
+import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Discovers the plugins via {@link ServiceLoader}. A plugin is instantiated and initialized on first use only,
+ * so plugins which are not used by any connection do not cost anything.
+ */
 public class PluginLoader {
-    @Getter
-    private static Map<String, SyncInputPlugin> inputPlugins = new HashMap<>();
-    @Getter
-    private static Map<String, SyncOutputPlugin> outputPlugins = new HashMap<>();
-
-    public static void loadPlugins() throws InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-        loadInputPlugins();
-        loadOutputPlugins();
+    final private static Logger log = LogManager.getLogger(PluginLoader.class);
+
+    private static final Map<String, ServiceLoader.Provider<SyncInputPlugin>> inputProviders = new TreeMap<>();
+    private static final Map<String, ServiceLoader.Provider<SyncOutputPlugin>> outputProviders = new TreeMap<>();
+    private static final Map<String, SyncInputPlugin> inputPlugins = new ConcurrentHashMap<>();
+    private static final Map<String, SyncOutputPlugin> outputPlugins = new ConcurrentHashMap<>();
+    private static final Map<String, Object> initLocks = new ConcurrentHashMap<>();
+    private static volatile Configuration config;
+    private static String[] args = new String[0];
+
+    public static void loadPlugins() {
+        discover(inputProviders, SyncInputPlugin.class);
+        discover(outputProviders, SyncOutputPlugin.class);
+    }
+
+    public static boolean initPlugins(Configuration config, String[] args) {
+        PluginLoader.config = config;
+        PluginLoader.args = args;
+        if (!hasPluginArguments(args)) {
+            return true;
+        }
+
+        // plugins handle their own command line arguments, so all of them need to be initialized
+        for (String schema : inputProviders.keySet()) {
+            if (getInputPlugin(schema) == null) {
+                return false;
+            }
+        }
+        for (String schema : outputProviders.keySet()) {
+            if (getOutputPlugin(schema) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prepares the switch to a changed configuration without applying it, the connections of the changed
+     * configuration can be bound to the plugins of the staging before anything changes
+     */
+    public static synchronized Staging stage(Configuration config) {
+        return new Staging(config, getChangedPlugins(config));
+    }
+
+    /**
+     * Switches to a changed configuration. Plugins whose configuration changed are replaced by the instances of the
+     * staging, plugins the staging did not initialize are initialized again on their next use, all other plugins stay
+     * initialized. Connections keep the plugin instances they already got.
+     */
+    public static synchronized void apply(Staging staging) {
+        PluginLoader.config = staging.config;
+        for (String schema : staging.changed) {
+            log.info("Configuration of plugin " + schema + " changed, initializing it again");
+            // a running initialization still used the previous configuration, so wait for it before replacing
+            replace(inputPlugins, SyncInputPlugin.class, schema, staging.inputPlugins.get(schema));
+            replace(outputPlugins, SyncOutputPlugin.class, schema, staging.outputPlugins.get(schema));
+        }
+    }
+
+    private static <T extends SyncPlugin> void replace(Map<String, T> plugins, Class<T> clazz, String schema, T plugin) {
+        synchronized (initLocks.computeIfAbsent(clazz.getSimpleName() + ":" + schema, key -> new Object())) {
+            if (plugin != null) {
+                plugins.put(schema, plugin);
+            } else {
+                plugins.remove(schema);
+            }
+        }
+    }
+
+    private static Set<String> getChangedPlugins(Configuration config) {
+        Set<String> changed = new TreeSet<>();
+        Map<String, Object> previous = getPluginConfigs(PluginLoader.config);
+        Map<String, Object> current = getPluginConfigs(config);
+        for (String schema : previous.keySet()) {
+            if (!current.containsKey(schema) || !Objects.equals(previous.get(schema), current.get(schema))) {
+                changed.add(schema);
+            }
+        }
+        for (String schema : current.keySet()) {
+            if (!previous.containsKey(schema)) {
+                changed.add(schema);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return initialized plugin, null if unknown or the initialization failed
+     */
+    public static SyncInputPlugin getInputPlugin(String schema) {
+        return getPlugin(inputPlugins, inputProviders, schema, SyncInputPlugin.class);
     }
 
-    public static boolean initPlugins(Configuration config, String[] args) throws Exception {
-        return PluginLoader.initPlugins(config, (Collection<SyncPlugin>) (Collection<?>) inputPlugins.values(), args)
-                && PluginLoader.initPlugins(config, (Collection<SyncPlugin>) (Collection<?>) outputPlugins.values(), args);
+    /**
+     * @return initialized plugin, null if unknown or the initialization failed
+     */
+    public static SyncOutputPlugin getOutputPlugin(String schema) {
+        return getPlugin(outputPlugins, outputProviders, schema, SyncOutputPlugin.class);
     }
 
     public static String getHelpMessages(StringBuilder helpMessages) {
         helpMessages.append("\nInput Plugins:\n");
-        for (SyncInputPlugin inputPlugin : inputPlugins.values()) {
-            helpMessages.append(inputPlugin.helpScreen());
+        for (ServiceLoader.Provider<SyncInputPlugin> provider : inputProviders.values()) {
+            helpMessages.append(provider.get().helpScreen());
         }
         helpMessages.append("Output Plugins:\n");
-        for (SyncOutputPlugin outputPlugin : outputPlugins.values()) {
-            helpMessages.append(outputPlugin.helpScreen());
+        for (ServiceLoader.Provider<SyncOutputPlugin> provider : outputProviders.values()) {
+            helpMessages.append(provider.get().helpScreen());
         }
         return helpMessages.toString();
     }
 
-    private static boolean initPlugins(Configuration config, Collection<SyncPlugin> plugins, String[] args) throws Exception {
-        for (SyncPlugin plugin : plugins) {
+    private static <T extends SyncPlugin> T getPlugin(Map<String, T> plugins, Map<String, ServiceLoader.Provider<T>> providers, String schema, Class<T> clazz) {
+        T plugin = plugins.get(schema);
+        if (plugin != null) {
+            return plugin;
+        }
+        ServiceLoader.Provider<T> provider = providers.get(schema);
+        if (provider == null) {
+            log.error("Unknown plugin: " + schema);
+            return null;
+        }
 
-            for (PluginConfiguration pluginConfig : config.getPlugins()) {
-                if (StringUtils.equals(pluginConfig.getPlugin(), plugin.getSchema())) {
-                    plugin.init(pluginConfig.getConfig());
-                    break;
+        // each plugin is initialized once, different plugins may be initialized concurrently
+        synchronized (initLocks.computeIfAbsent(clazz.getSimpleName() + ":" + schema, key -> new Object())) {
+            plugin = plugins.get(schema);
+            if (plugin == null) {
+                plugin = initPlugin(config, provider, schema, clazz);
+                if (plugin != null) {
+                    plugins.put(schema, plugin);
                 }
             }
+            return plugin;
+        }
+    }
 
-            if (!plugin.parseArguments(args)) {
-                return false;
+    private static <T extends SyncPlugin> T initPlugin(Configuration config, ServiceLoader.Provider<T> provider, String schema, Class<T> clazz) {
+        log.info("Initializing plugin: " + schema);
+        try {
+            T instance = provider.get();
+            if (config != null && config.getPlugins() != null) {
+                for (PluginConfiguration pluginConfig : config.getPlugins()) {
+                    if (StringUtils.equals(pluginConfig.getPlugin(), schema)) {
+                        instance.init(pluginConfig.getConfig());
+                        break;
+                    }
+                }
             }
+            if (!instance.parseArguments(args)) {
+                log.error("Plugin " + schema + " rejected the command line arguments");
+                return null;
+            }
+            return PluginMetrics.instrument(instance, clazz);
+        } catch (Exception e) {
+            log.error("Could not initialize plugin: " + schema, e);
+            return null;
         }
-        return true;
     }
 
-    private static void loadInputPlugins() throws IllegalAccessException, InstantiationException, InvocationTargetException, NoSuchMethodException {
-        loadPlugins(inputPlugins, SyncInputPlugin.class);
+    private static Map<String, Object> getPluginConfigs(Configuration config) {
+        Map<String, Object> configs = new HashMap<>();
+        if (config != null && config.getPlugins() != null) {
+            for (PluginConfiguration pluginConfig : config.getPlugins()) {
+                configs.putIfAbsent(pluginConfig.getPlugin(), pluginConfig.getConfig());
+            }
+        }
+        return configs;
     }
 
-    private static void loadOutputPlugins() throws IllegalAccessException, InstantiationException, InvocationTargetException, NoSuchMethodException {
-        loadPlugins(outputPlugins, SyncOutputPlugin.class);
+    private static <T extends SyncPlugin> void discover(Map<String, ServiceLoader.Provider<T>> providers, Class<T> clazz) {
+        ServiceLoader.load(clazz).stream().forEach(provider -> {
+            PluginSchema schema = provider.type().getAnnotation(PluginSchema.class);
+            // plugins without annotation have to be instantiated to get their schema
+            providers.put(schema != null ? schema.value() : provider.get().getSchema(), provider);
+        });
+        log.debug("Discovered " + clazz.getSimpleName() + "s: " + providers.keySet());
     }
 
-    private static <T> void loadPlugins(Map<String, T> map, Class<T> clazz) throws IllegalAccessException, InstantiationException, NoSuchMethodException, InvocationTargetException {
-        Reflections reflections = new Reflections("rocks.voss.musicsync.plugins");
-        Set<Class<? extends T>> subTypes = reflections.getSubTypesOf(clazz);
-        Iterator<Class<? extends T>> iterator = subTypes.iterator();
-        while (iterator.hasNext()) {
-            T instance = iterator.next().getDeclaredConstructor().newInstance(new Object[]{});
-            map.put(((SyncPlugin) instance).getSchema(), instance);
+    private static boolean hasPluginArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (StringUtils.equals(args[i], "--file") || StringUtils.equals(args[i], "-f") || StringUtils.equals(args[i], "--instance")) {
+                i++;
+            } else {
+                return true;
+            }
         }
+        return false;
     }
-}
 
+    /**
+     * Plugins of a changed configuration which is not applied yet, see {@link #stage(Configuration)}
+     */
+    public static class Staging {
+        private final Configuration config;
+        private final Set<String> changed;
+        private final Map<String, SyncInputPlugin> inputPlugins = new HashMap<>();
+        private final Map<String, SyncOutputPlugin> outputPlugins = new HashMap<>();
+
+        private Staging(Configuration config, Set<String> changed) {
+            this.config = config;
+            this.changed = changed;
+        }
+
+        /**
+         * @return schemas of the plugins whose configuration changed
+         */
+        public Set<String> getChanged() {
+            return changed;
+        }
+
+        /**
+         * @return plugin initialized with the changed configuration if its configuration changed, the plugin in use
+         * otherwise, null if unknown or the initialization failed
+         */
+        public SyncInputPlugin getInputPlugin(String schema) {
+            return changed.contains(schema) ? getPlugin(inputPlugins, inputProviders, schema, SyncInputPlugin.class) : PluginLoader.getInputPlugin(schema);
+        }
+
+        /**
+         * @return plugin initialized with the changed configuration if its configuration changed, the plugin in use
+         * otherwise, null if unknown or the initialization failed
+         */
+        public SyncOutputPlugin getOutputPlugin(String schema) {
+            return changed.contains(schema) ? getPlugin(outputPlugins, outputProviders, schema, SyncOutputPlugin.class) : PluginLoader.getOutputPlugin(schema);
+        }
+
+        private <T extends SyncPlugin> T getPlugin(Map<String, T> plugins, Map<String, ServiceLoader.Provider<T>> providers, String schema, Class<T> clazz) {
+            // a failed initialization is kept as well, so it is not tried again for every connection
+            if (!plugins.containsKey(schema)) {
+                ServiceLoader.Provider<T> provider = providers.get(schema);
+                if (provider == null) {
+                    log.error("Unknown plugin: " + schema);
+                }
+                plugins.put(schema, provider != null ? initPlugin(config, provider, schema, clazz) : null);
+            }
+            return plugins.get(schema);
+        }
+    }
+}
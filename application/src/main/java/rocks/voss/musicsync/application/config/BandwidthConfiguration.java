@@ -0,0 +1,15 @@
+package rocks.voss.musicsync.application.config;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class BandwidthConfiguration {
+    private long rate = 0;
+    private Map<String, Long> rates = new HashMap<>();
+    private List<BandwidthWindow> windows = new ArrayList<>();
+}
@@ -0,0 +1,9 @@
+package rocks.voss.musicsync.application.config;
+
+import lombok.Data;
+
+@Data
+public class BandwidthWindow {
+    private String from;
+    private String to;
+}
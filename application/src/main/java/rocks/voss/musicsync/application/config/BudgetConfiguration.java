@@ -0,0 +1,13 @@
+package rocks.voss.musicsync.application.config;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+public class BudgetConfiguration {
+    private int cycle = 0;
+    private int connection = 0;
+    private Map<String, Integer> connections = new HashMap<>();
+}
@@ -0,0 +1,9 @@
+package rocks.voss.musicsync.application.config;
+
+import lombok.Data;
+
+@Data
+public class ChunkConfiguration {
+    private int tracks = 50;
+    private long bytes = 0;
+}
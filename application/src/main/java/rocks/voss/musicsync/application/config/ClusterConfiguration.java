@@ -0,0 +1,10 @@
+package rocks.voss.musicsync.application.config;
+
+import lombok.Data;
+
+@Data
+public class ClusterConfiguration {
+    private String directory = "";
+    private int heartbeat = 10;
+    private int expiry = 30;
+}
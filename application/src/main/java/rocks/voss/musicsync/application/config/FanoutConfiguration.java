@@ -0,0 +1,9 @@
+package rocks.voss.musicsync.application.config;
+
+import lombok.Data;
+
+@Data
+public class FanoutConfiguration {
+    private boolean enabled = false;
+    private int window = 60;
+}
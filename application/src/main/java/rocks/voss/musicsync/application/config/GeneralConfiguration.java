@@ -2,9 +2,29 @@ package rocks.voss.musicsync.application.config;
 
 import lombok.Data;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @Data
 public class GeneralConfiguration {
     int timeout;
     boolean bulk = false;
+    ChunkConfiguration chunk = new ChunkConfiguration();
     int sortMode;
+    // 1 keeps the serial sync of previous versions, 0 = auto
+    int threads = 1;
+    int connectionTimeout = 0;
+    int defaultPluginLimit = 1;
+    boolean reload = false;
+    Map<String, Integer> pluginLimits = new HashMap<>();
+    PipelineConfiguration pipeline = new PipelineConfiguration();
+    JournalConfiguration journal = new JournalConfiguration();
+    BudgetConfiguration budget = new BudgetConfiguration();
+    RetryConfiguration retry = new RetryConfiguration();
+    FanoutConfiguration fanout = new FanoutConfiguration();
+    BandwidthConfiguration bandwidth = new BandwidthConfiguration();
+    ClusterConfiguration cluster = new ClusterConfiguration();
+    SchedulerConfiguration scheduler = new SchedulerConfiguration();
+    HttpConfiguration http = new HttpConfiguration();
+    WarmupConfiguration warmup = new WarmupConfiguration();
 }
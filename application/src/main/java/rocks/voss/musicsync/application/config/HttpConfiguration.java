@@ -0,0 +1,9 @@
+package rocks.voss.musicsync.application.config;
+
+import lombok.Data;
+
+@Data
+public class HttpConfiguration {
+    private int port = 0;
+    private String bind = "127.0.0.1";
+}
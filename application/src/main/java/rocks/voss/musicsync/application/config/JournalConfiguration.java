@@ -0,0 +1,11 @@
+package rocks.voss.musicsync.application.config;
+
+import lombok.Data;
+
+@Data
+public class JournalConfiguration {
+    // empty = no journal, every cycle syncs all connections completely like previous versions
+    private String file = "";
+    private int compactThreshold = 10000;
+    private int verifyInterval = 86400;
+}
@@ -0,0 +1,10 @@
+package rocks.voss.musicsync.application.config;
+
+import lombok.Data;
+
+@Data
+public class PipelineConfiguration {
+    private boolean enabled = false;
+    private int resolveQueue = 0;
+    private int materializeQueue = 0;
+}
@@ -0,0 +1,9 @@
+package rocks.voss.musicsync.application.config;
+
+import lombok.Data;
+
+@Data
+public class RetryConfiguration {
+    private int initialDelay = 600;
+    private int maxDelay = 86400;
+}
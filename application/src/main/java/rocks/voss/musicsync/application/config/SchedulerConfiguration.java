@@ -0,0 +1,15 @@
+package rocks.voss.musicsync.application.config;
+
+import lombok.Data;
+
+@Data
+public class SchedulerConfiguration {
+    private boolean adaptive = false;
+    private int minInterval = 10;
+    private int maxInterval = 3600;
+    private int maxBackoff = 3600;
+    private double jitter = 0;
+    private int watchInterval = 21600;
+    private String order = "fifo";
+    private double aging = 0.1;
+}
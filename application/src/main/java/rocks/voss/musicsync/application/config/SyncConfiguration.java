@@ -5,6 +5,7 @@ import lombok.Data;
 @Data
 public class SyncConfiguration {
     private String name;
+    private int priority = 0;
     private ConnectionEndpoint in;
     private ConnectionEndpoint out;
 }
@@ -0,0 +1,13 @@
+package rocks.voss.musicsync.application.config;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+public class WarmupConfiguration {
+    private boolean enabled = true;
+    private int timeout = 60;
+    private Map<String, Integer> timeouts = new HashMap<>();
+}
@@ -0,0 +1,98 @@
+package rocks.voss.musicsync.application.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncThrottle;
+import rocks.voss.musicsync.application.config.BandwidthConfiguration;
+import rocks.voss.musicsync.application.config.BandwidthWindow;
+import rocks.voss.musicsync.application.metrics.Counter;
+import rocks.voss.musicsync.application.metrics.Metrics;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits the bytes per second the output plugins transfer, for all outputs together and per output schema.
+ * The token buckets are shared by all connections. With time windows configured, the limits only apply within them.
+ * An output without any limit gets a throttle which never waits.
+ */
+public class BandwidthLimiter {
+    final private static Logger log = LogManager.getLogger(BandwidthLimiter.class);
+
+    private static final Map<String, SyncThrottle> throttles = new ConcurrentHashMap<>();
+    private static volatile BandwidthConfiguration config = new BandwidthConfiguration();
+    private static volatile TokenBucket global;
+    private static volatile List<LocalTime[]> windows = List.of();
+
+    /**
+     * @throws IllegalArgumentException if a time window is invalid
+     */
+    public static void configure(BandwidthConfiguration config) {
+        List<LocalTime[]> windows = new ArrayList<>(config.getWindows().size());
+        for (BandwidthWindow window : config.getWindows()) {
+            try {
+                windows.add(new LocalTime[]{LocalTime.parse(window.getFrom()), LocalTime.parse(window.getTo())});
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid bandwidth window " + window.getFrom() + " - " + window.getTo(), e);
+            }
+        }
+        BandwidthLimiter.windows = windows;
+        BandwidthLimiter.global = config.getRate() > 0 ? new TokenBucket(config.getRate()) : null;
+        BandwidthLimiter.config = config;
+        throttles.clear();
+    }
+
+    /**
+     * @return throttle of the output plugin
+     */
+    public static SyncThrottle getThrottle(String schema) {
+        return throttles.computeIfAbsent(schema, BandwidthLimiter::createThrottle);
+    }
+
+    private static SyncThrottle createThrottle(String schema) {
+        long rate = config.getRates().getOrDefault(schema, 0L);
+        TokenBucket bucket = rate > 0 ? new TokenBucket(rate) : null;
+        TokenBucket global = BandwidthLimiter.global;
+        if (bucket == null && global == null) {
+            return SyncThrottle.UNLIMITED;
+        }
+        log.debug("Bandwidth of plugin " + schema + " limited to " + (rate > 0 ? rate : config.getRate()) + " bytes per second");
+        Counter throttled = Metrics.counter("musicsync_throttled_milliseconds_total", "Time the output plugin waited for bandwidth", "plugin", schema);
+        return bytes -> {
+            if (!isActive()) {
+                return;
+            }
+            long waited = 0;
+            if (bucket != null) {
+                waited += bucket.acquire(bytes);
+            }
+            if (global != null) {
+                waited += global.acquire(bytes);
+            }
+            if (waited > 0) {
+                throttled.add(waited / 1_000_000L);
+            }
+        };
+    }
+
+    private static boolean isActive() {
+        List<LocalTime[]> windows = BandwidthLimiter.windows;
+        if (windows.isEmpty()) {
+            return true;
+        }
+        LocalTime now = LocalTime.now();
+        for (LocalTime[] window : windows) {
+            boolean inside = window[0].isBefore(window[1])
+                    ? !now.isBefore(window[0]) && now.isBefore(window[1])
+                    // the window wraps around midnight
+                    : !now.isBefore(window[0]) || now.isBefore(window[1]);
+            if (inside) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,323 @@
+package rocks.voss.musicsync.application.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.application.config.GeneralConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs the connections of a sync cycle on a bounded pool. The number of connections which are using the same plugin
+ * at once is limited per plugin schema and a connection exceeding the connection timeout gets interrupted, so the
+ * remaining connections of the cycle are not held up by it. A connection which does not stop after the interrupt, e.g.
+ * while blocked in a socket read, is abandoned after a grace period and its thread is replaced until it returns.
+ * Connections reading the same input share the limit of the input plugin, so they can read the shared input at once.
+ * Connections waiting for a thread are started in the order of their priority and expected duration.
+ */
+public class ConnectionExecutor {
+    final private static Logger log = LogManager.getLogger(ConnectionExecutor.class);
+    // seconds a connection may take to stop after the interrupt before it is abandoned
+    final private static long GRACE_PERIOD = 30;
+
+    private final GeneralConfiguration config;
+    private final SyncOrder order;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService watchdog;
+    private final Map<String, Semaphore> pluginLimits = new ConcurrentHashMap<>();
+    // number of running connections per shared input which hold the limit of its plugin together
+    private final Map<List<Object>, Integer> sharedInputs = new HashMap<>();
+
+    // tie-breaker of connections with the same rank, keeps the order of the configuration
+    private final AtomicLong sequence = new AtomicLong();
+
+    public ConnectionExecutor(GeneralConfiguration config, Tuning tuning, SyncOrder order) {
+        this.config = config;
+        this.order = order;
+        this.executor = new ThreadPoolExecutor(tuning.getThreads(), tuning.getThreads(), 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), ThreadFactories.daemon("sync"));
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(ThreadFactories.daemon("sync-watchdog"));
+    }
+
+    /**
+     * Runs all connections and waits until they are done
+     */
+    public void execute(List<SyncConnection> connections, Function<SyncConnection, SyncResult> task) {
+        List<Job> jobs = new ArrayList<>(connections.size());
+        for (SyncConnection connection : connections) {
+            // connections of a one-shot run are waiting since their previous sync
+            jobs.add(new Job(connection, order.getSynced(connection), job -> run(job, task)));
+        }
+        // idle threads take the first jobs right away, so they are submitted in order
+        Collections.sort(jobs);
+        for (Job job : jobs) {
+            executor.execute(job);
+        }
+
+        for (Job job : jobs) {
+            try {
+                // bounded by the watchdog, which abandons a connection exceeding the timeout & the grace period
+                job.result.get();
+            } catch (CancellationException e) {
+                log.error("Not waiting for abandoned connection: " + job.connection.getName());
+            } catch (ExecutionException e) {
+                log.error("Exception in connection: " + job.connection.getName(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs the connection in the background
+     *
+     * @param due  milliseconds since the epoch the connection is due since
+     * @param done receives the result of the connection once it is done
+     */
+    public void submit(SyncConnection connection, long due, Function<SyncConnection, SyncResult> task, Consumer<SyncResult> done) {
+        executor.execute(new Job(connection, due, job -> done.accept(run(job, task))));
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    private SyncResult run(Job job, Function<SyncConnection, SyncResult> task) {
+        SyncConnection connection = job.connection;
+        List<Runnable> acquired = new ArrayList<>(2);
+        try {
+            for (String schema : getSchemas(connection)) {
+                Semaphore semaphore = getLimit(schema);
+                List<Object> input = isSharedInput(connection, schema) ? SharedInputs.getInputKey(connection) : null;
+                if (!acquire(semaphore, input)) {
+                    log.error("Plugin " + schema + " not available in time, skipping connection: " + connection.getName());
+                    return SyncResult.FAILED;
+                }
+                acquired.add(() -> release(semaphore, input));
+            }
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            ScheduledFuture<?> timeout = scheduleTimeout(job, Thread.currentThread(), running);
+            try {
+                return task.apply(connection);
+            } catch (RuntimeException e) {
+                log.error("Exception in connection: " + connection.getName(), e);
+                return SyncResult.FAILED;
+            } finally {
+                synchronized (running) {
+                    running.set(false);
+                }
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+                // clear a pending interrupt of the watchdog so it does not leak into the next connection
+                Thread.interrupted();
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for plugins of connection: " + connection.getName());
+            return SyncResult.FAILED;
+        } finally {
+            for (Runnable release : acquired) {
+                release.run();
+            }
+        }
+    }
+
+    private ScheduledFuture<?> scheduleTimeout(Job job, Thread thread, AtomicBoolean running) {
+        if (config.getConnectionTimeout() <= 0) {
+            return null;
+        }
+        return watchdog.schedule(() -> {
+            synchronized (running) {
+                if (running.get()) {
+                    log.error("Connection " + job.connection.getName() + " exceeded timeout of " + config.getConnectionTimeout() + " seconds, interrupting");
+                    thread.interrupt();
+                    watchdog.schedule(() -> abandon(job, running), GRACE_PERIOD, TimeUnit.SECONDS);
+                }
+            }
+        }, config.getConnectionTimeout(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops waiting for a connection which ignored the interrupt and adds a thread to the pool until it returns
+     */
+    private void abandon(Job job, AtomicBoolean running) {
+        synchronized (running) {
+            if (!running.get()) {
+                return;
+            }
+            log.error("Connection " + job.connection.getName() + " did not stop within " + GRACE_PERIOD + " seconds after the interrupt, abandoning it");
+            job.abandoned = true;
+            job.result.cancel(false);
+            resize(1);
+        }
+    }
+
+    private synchronized void resize(int delta) {
+        // the maximum size must never be below the core size
+        if (delta > 0) {
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() + delta);
+            executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+        } else {
+            executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() + delta);
+        }
+    }
+
+    private boolean isSharedInput(SyncConnection connection, String schema) {
+        return config.getFanout().isEnabled() && schema.equals(connection.getInputSchema()) && !schema.equals(connection.getOutputSchema());
+    }
+
+    /**
+     * @param input key of the shared input, joins a connection of the same input which holds the limit already
+     */
+    private boolean acquire(Semaphore semaphore, List<Object> input) throws InterruptedException {
+        if (input != null && join(input)) {
+            return true;
+        }
+        if (!acquire(semaphore)) {
+            return false;
+        }
+        if (input != null && !hold(input)) {
+            // another connection of the input acquired the limit in the meantime
+            semaphore.release();
+        }
+        return true;
+    }
+
+    private void release(Semaphore semaphore, List<Object> input) {
+        if (input == null || leave(input)) {
+            semaphore.release();
+        }
+    }
+
+    private synchronized boolean join(List<Object> input) {
+        Integer count = sharedInputs.get(input);
+        if (count == null) {
+            return false;
+        }
+        sharedInputs.put(input, count + 1);
+        return true;
+    }
+
+    /**
+     * @return false if the connection joined another connection of the input instead
+     */
+    private synchronized boolean hold(List<Object> input) {
+        if (join(input)) {
+            return false;
+        }
+        sharedInputs.put(input, 1);
+        return true;
+    }
+
+    /**
+     * @return true if it was the last connection of the input, which releases the limit
+     */
+    private synchronized boolean leave(List<Object> input) {
+        int count = sharedInputs.get(input) - 1;
+        if (count > 0) {
+            sharedInputs.put(input, count);
+            return false;
+        }
+        sharedInputs.remove(input);
+        return true;
+    }
+
+    private boolean acquire(Semaphore semaphore) throws InterruptedException {
+        if (config.getConnectionTimeout() <= 0) {
+            semaphore.acquire();
+            return true;
+        }
+        return semaphore.tryAcquire(config.getConnectionTimeout(), TimeUnit.SECONDS);
+    }
+
+    private Iterable<String> getSchemas(SyncConnection connection) {
+        // sorted & distinct to always acquire the limits in the same order
+        TreeSet<String> schemas = new TreeSet<>();
+        if (connection.getInputSchema() != null) {
+            schemas.add(connection.getInputSchema());
+        }
+        if (connection.getOutputSchema() != null) {
+            schemas.add(connection.getOutputSchema());
+        }
+        return schemas;
+    }
+
+    private Semaphore getLimit(String schema) {
+        return pluginLimits.computeIfAbsent(schema, key -> {
+            int limit = config.getPluginLimits().getOrDefault(key, config.getDefaultPluginLimit());
+            log.debug("Concurrency limit for plugin " + key + ": " + limit);
+            return new Semaphore(Math.max(1, limit), true);
+        });
+    }
+    /**
+     * Connection waiting for a thread, ordered by priority and rank
+     */
+    private class Job implements Runnable, Comparable<Job> {
+        private final SyncConnection connection;
+        private final Consumer<Job> body;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final int priority;
+        private final long rank;
+        private final long sequence;
+        private volatile boolean abandoned;
+
+        Job(SyncConnection connection, long due, Consumer<Job> body) {
+            this.connection = connection;
+            this.body = body;
+            this.priority = connection.getPriority();
+            this.rank = order.getRank(connection, due);
+            this.sequence = ConnectionExecutor.this.sequence.incrementAndGet();
+            log.debug("Queueing connection " + connection.getName() + " with priority " + priority + " and rank " + rank);
+        }
+
+        @Override
+        public void run() {
+            try {
+                body.accept(this);
+                result.complete(null);
+            } catch (RuntimeException | Error e) {
+                result.completeExceptionally(e);
+            } finally {
+                if (abandoned) {
+                    log.info("Abandoned connection " + connection.getName() + " returned");
+                    resize(-1);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            if (rank != other.rank) {
+                return Long.compare(rank, other.rank);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,497 @@
+package rocks.voss.musicsync.application.engine;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.application.config.ClusterConfiguration;
+import rocks.voss.musicsync.application.metrics.Metrics;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Spreads the connections over several instances sharing a directory, every connection is synced by the instance
+ * holding its lease. The instances write a heartbeat file and renew their leases on the heartbeat interval, a lease
+ * or instance which was not renewed within the expiry is considered dead and its connections are taken over.
+ * <p>
+ * Leases are created with a hard link, which is atomic on local filesystems and NFS alike. A lease is renamed before
+ * it is renewed or replaced, so only one instance wins a takeover and a renewal never overwrites a lease taken over. Daemons assign every connection to one of
+ * the live instances by rendezvous hashing and hand over connections when instances join, a one-shot run takes every
+ * connection which is free. All instances need clocks which are synchronized well within the expiry.
+ */
+public class ConnectionLeases {
+    final private static Logger log = LogManager.getLogger(ConnectionLeases.class);
+
+    private final ClusterConfiguration config;
+    private final String instance;
+    private final boolean balance;
+    private final Path instances;
+    private final Path leases;
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+    private final Set<String> known = ConcurrentHashMap.newKeySet();
+    private volatile Consumer<String> listener = connection -> {
+    };
+    private volatile List<String> live = new ArrayList<>();
+    private ScheduledExecutorService heartbeat;
+    private boolean stopped = false;
+
+    /**
+     * @param instance unique name of this instance within the cluster
+     * @param balance  hand over connections to the instance they are assigned to, false for one-shot runs
+     */
+    public ConnectionLeases(ClusterConfiguration config, String instance, boolean balance) {
+        this.config = config;
+        this.instance = instance;
+        this.balance = balance;
+        if (isEnabled()) {
+            if (!instance.matches("[A-Za-z0-9][A-Za-z0-9._-]*")) {
+                throw new IllegalArgumentException("Instance name may only contain letters, digits, '.', '_' and '-' and has to start with a letter or digit: " + instance);
+            }
+            this.instances = Paths.get(config.getDirectory(), "instances");
+            this.leases = Paths.get(config.getDirectory(), "leases");
+        } else {
+            this.instances = null;
+            this.leases = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return StringUtils.isNotBlank(config.getDirectory());
+    }
+
+    public String getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param listener called on the heartbeat with the connections assigned to this instance whose lease is free, so
+     *                 they are synced without waiting for their interval
+     */
+    public void setListener(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Registers this instance and starts renewing its heartbeat and leases
+     *
+     * @throws IllegalStateException    if a live instance with the same name exists already
+     * @throws IllegalArgumentException if the expiry is shorter than twice the heartbeat
+     */
+    public synchronized void start() throws IOException {
+        if (!isEnabled() || heartbeat != null) {
+            return;
+        }
+        if (config.getExpiry() < 2 * config.getHeartbeat()) {
+            throw new IllegalArgumentException("Expiry of the cluster has to be at least twice the heartbeat, leases would expire while they are renewed");
+        }
+        Files.createDirectories(instances);
+        Files.createDirectories(leases);
+
+        // the heartbeat file is created exclusively, so two instances starting with the same name at once notice
+        Path file = instances.resolve(instance);
+        String[] previous = read(file);
+        if (previous == null && !create(file, getHeartbeat())) {
+            previous = read(file);
+        }
+        if (previous != null && previous.length == 3 && !isExpired(previous[2]) && (!getHost().equals(previous[0]) || isAlive(previous[1]))) {
+            throw new IllegalStateException("Instance " + instance + " is running already on " + previous[0] + " with pid " + previous[1]
+                    + ", start every instance with its own name");
+        }
+
+        beat();
+        heartbeat = Executors.newSingleThreadScheduledExecutor(ThreadFactories.daemon("cluster-heartbeat"));
+        heartbeat.scheduleAtFixedRate(this::beat, config.getHeartbeat(), config.getHeartbeat(), TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "cluster-shutdown"));
+        log.info("Joined cluster in " + config.getDirectory() + " as instance " + instance + ", live instances: " + live);
+    }
+
+    /**
+     * Releases all leases and unregisters this instance, so other instances take over right away
+     */
+    public synchronized void shutdown() {
+        if (!isEnabled() || heartbeat == null || stopped) {
+            return;
+        }
+        stopped = true;
+        heartbeat.shutdownNow();
+        for (String connection : new ArrayList<>(held)) {
+            drop(connection);
+        }
+        try {
+            Files.deleteIfExists(instances.resolve(instance));
+        } catch (IOException e) {
+            log.error("Could not unregister instance " + instance, e);
+        }
+        log.info("Left cluster as instance " + instance);
+    }
+
+    /**
+     * Called before a connection is synced, takes its lease if it is free or expired and assigned to this instance
+     *
+     * @return true if this instance holds the lease of the connection and syncs it
+     */
+    public synchronized boolean acquire(String connection) {
+        if (!isEnabled()) {
+            return true;
+        }
+        if (stopped) {
+            return false;
+        }
+        known.add(connection);
+        Path file = getLeaseFile(connection);
+        String[] lease = read(file);
+        if (lease != null && lease.length == 2 && instance.equals(lease[0])) {
+            // renewed, or left over by a previous run of this instance
+            if (!held.add(connection) || renew(connection, file)) {
+                running.add(connection);
+                return true;
+            }
+            lost(connection, read(file));
+            return false;
+        }
+        if (held.contains(connection)) {
+            lost(connection, lease);
+        }
+        if (lease != null && (lease.length != 2 || !isExpired(lease[1]))) {
+            return false;
+        }
+        if (balance && !instance.equals(getOwner(connection))) {
+            return false;
+        }
+        if (lease != null && !remove(connection, file, lease)) {
+            return false;
+        }
+        if (!create(file, instance + " " + System.currentTimeMillis())) {
+            return false;
+        }
+        log.info(lease != null ? "Took over expired lease of connection " + connection + " from " + lease[0] : "Acquired lease of connection " + connection);
+        held.add(connection);
+        running.add(connection);
+        updateGauges();
+        return true;
+    }
+
+    /**
+     * Called before the sync of a connection changes the target, checks that no other instance took over the lease
+     * in the meantime
+     *
+     * @return false if this instance lost the lease, the sync has to stop then
+     */
+    public synchronized boolean isHeld(String connection) {
+        if (!isEnabled()) {
+            return true;
+        }
+        if (!held.contains(connection)) {
+            return false;
+        }
+        String[] lease = read(getLeaseFile(connection));
+        if (lease != null && lease.length == 2 && instance.equals(lease[0])) {
+            return true;
+        }
+        lost(connection, lease);
+        return false;
+    }
+
+    /**
+     * Called after a connection was synced, hands its lease over if the connection is assigned to another instance
+     */
+    public synchronized void completed(String connection) {
+        if (!isEnabled()) {
+            return;
+        }
+        running.remove(connection);
+        if (balance && held.contains(connection) && !instance.equals(getOwner(connection))) {
+            log.info("Handing connection " + connection + " over to instance " + getOwner(connection));
+            drop(connection);
+        }
+    }
+
+    /**
+     * Gives up the lease of a connection which was removed from the configuration
+     */
+    public synchronized void release(String connection) {
+        if (!isEnabled()) {
+            return;
+        }
+        known.remove(connection);
+        drop(connection);
+    }
+
+    private void drop(String connection) {
+        if (!held.remove(connection)) {
+            return;
+        }
+        Path file = getLeaseFile(connection);
+        String[] lease = read(file);
+        try {
+            if (lease != null && lease.length == 2 && instance.equals(lease[0])) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.error("Could not release lease of connection " + connection, e);
+        }
+        updateGauges();
+    }
+
+    private void beat() {
+        for (String connection : renewAll()) {
+            log.debug("Lease of connection " + connection + " is free, requesting a sync");
+            listener.accept(connection);
+        }
+    }
+
+    /**
+     * @return connections assigned to this instance whose lease is free or expired
+     */
+    private synchronized List<String> renewAll() {
+        List<String> free = new ArrayList<>();
+        try {
+            write(instances.resolve(instance), getHeartbeat());
+            live = readLiveInstances();
+        } catch (IOException e) {
+            log.error("Could not write heartbeat of instance " + instance, e);
+            return free;
+        }
+        for (String connection : new ArrayList<>(held)) {
+            Path file = getLeaseFile(connection);
+            String[] lease = read(file);
+            if (lease == null || lease.length != 2 || !instance.equals(lease[0])) {
+                lost(connection, lease);
+            } else if (balance && !running.contains(connection) && !instance.equals(getOwner(connection))) {
+                log.info("Handing connection " + connection + " over to instance " + getOwner(connection));
+                drop(connection);
+            } else if (!renew(connection, file)) {
+                lost(connection, read(file));
+            }
+        }
+        updateGauges();
+
+        for (String connection : known) {
+            if (held.contains(connection) || balance && !instance.equals(getOwner(connection))) {
+                continue;
+            }
+            String[] lease = read(getLeaseFile(connection));
+            if (lease == null || lease.length == 2 && isExpired(lease[1])) {
+                free.add(connection);
+            }
+        }
+        return free;
+    }
+
+    private void lost(String connection, String[] lease) {
+        held.remove(connection);
+        log.error("Lease of connection " + connection + " was taken over by " + (lease != null && lease.length > 0 ? lease[0] : "nobody"));
+        updateGauges();
+    }
+
+    /**
+     * Renews a lease of this instance. The lease is moved aside first and only replaced if this instance still holds
+     * it, so a takeover by another instance in the meantime is not overwritten.
+     *
+     * @return false if another instance took over the lease
+     */
+    private boolean renew(String connection, Path file) {
+        Path tomb = file.resolveSibling("." + file.getFileName() + "." + instance + ".renewed");
+        try {
+            Files.move(file, tomb, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            // the lease is still in place, it is renewed on the next heartbeat
+            log.error("Could not renew lease of connection " + connection, e);
+            return true;
+        }
+        String[] moved = read(tomb);
+        try {
+            if (moved == null || moved.length != 2 || !instance.equals(moved[0])) {
+                // another instance took over the lease in the meantime, it gets its lease back
+                Files.createLink(file, tomb);
+                return false;
+            }
+            return create(file, instance + " " + System.currentTimeMillis());
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (IOException e) {
+            log.error("Could not restore lease of connection " + connection, e);
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(tomb);
+            } catch (IOException e) {
+                log.error("Could not delete " + tomb, e);
+            }
+        }
+    }
+
+    private boolean create(Path file, String content) {
+        Path tmp = file.resolveSibling("." + file.getFileName() + "." + instance + "." + ProcessHandle.current().pid());
+        try {
+            Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+            Files.createLink(file, tmp);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (IOException e) {
+            log.error("Could not create " + file, e);
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                log.error("Could not delete " + tmp, e);
+            }
+        }
+    }
+
+    /**
+     * Removes an expired lease, the lease is moved aside first, so only one of several instances removes it
+     */
+    private boolean remove(String connection, Path file, String[] expired) {
+        Path tomb = file.resolveSibling("." + file.getFileName() + "." + instance + ".expired");
+        try {
+            Files.move(file, tomb, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return true;
+        } catch (IOException e) {
+            log.error("Could not remove expired lease of connection " + connection, e);
+            return false;
+        }
+        String[] moved = read(tomb);
+        try {
+            if (moved != null && String.join(" ", moved).equals(String.join(" ", expired))) {
+                return true;
+            }
+            // another instance renewed or took over the lease in the meantime, it gets its lease back
+            Files.createLink(file, tomb);
+            return false;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (IOException e) {
+            log.error("Could not restore lease of connection " + connection, e);
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(tomb);
+            } catch (IOException e) {
+                log.error("Could not delete " + tomb, e);
+            }
+        }
+    }
+
+    /**
+     * @return live instance the connection is assigned to by rendezvous hashing
+     */
+    private String getOwner(String connection) {
+        String owner = instance;
+        long best = Long.MIN_VALUE;
+        for (String candidate : live) {
+            long weight = UUID.nameUUIDFromBytes((candidate + "\n" + connection).getBytes(StandardCharsets.UTF_8)).getMostSignificantBits();
+            if (weight > best || weight == best && candidate.compareTo(owner) < 0) {
+                best = weight;
+                owner = candidate;
+            }
+        }
+        return owner;
+    }
+
+    private List<String> readLiveInstances() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(instances)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(".")) {
+                    // temporary file of a heartbeat
+                    continue;
+                }
+                String[] heartbeat = read(file);
+                if (name.equals(instance) || heartbeat != null && heartbeat.length == 3 && !isExpired(heartbeat[2])) {
+                    names.add(name);
+                }
+            }
+        }
+        if (!names.contains(instance)) {
+            names.add(instance);
+        }
+        names.sort(null);
+        if (!names.equals(live)) {
+            log.info("Live instances: " + names);
+        }
+        return names;
+    }
+
+    private static String getHeartbeat() {
+        return getHost() + " " + ProcessHandle.current().pid() + " " + System.currentTimeMillis();
+    }
+
+    private void updateGauges() {
+        Metrics.gauge("musicsync_cluster_leases", "Connections whose lease is held by this instance").set(held.size());
+        Metrics.gauge("musicsync_cluster_instances", "Live instances of the cluster").set(live.size());
+    }
+
+    private Path getLeaseFile(String connection) {
+        return leases.resolve(URLEncoder.encode(connection, StandardCharsets.UTF_8) + ".lease");
+    }
+
+    private boolean isExpired(String timestamp) {
+        try {
+            return System.currentTimeMillis() - Long.parseLong(timestamp) > config.getExpiry() * 1000L;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private void write(Path file, String content) throws IOException {
+        Path tmp = file.resolveSibling("." + file.getFileName() + "." + instance + ".tmp");
+        Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String[] read(Path file) {
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().split(" ");
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.error("Could not read " + file, e);
+            return new String[0];
+        }
+    }
+
+    private static boolean isAlive(String pid) {
+        try {
+            return ProcessHandle.of(Long.parseLong(pid)).map(ProcessHandle::isAlive).orElse(false);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return name of this host, the default name of an instance
+     */
+    public static String getHost() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "localhost";
+        }
+    }
+}
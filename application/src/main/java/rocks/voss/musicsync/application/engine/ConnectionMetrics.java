@@ -0,0 +1,75 @@
+package rocks.voss.musicsync.application.engine;
+
+import rocks.voss.musicsync.application.metrics.Counter;
+import rocks.voss.musicsync.application.metrics.Gauge;
+import rocks.voss.musicsync.application.metrics.Histogram;
+import rocks.voss.musicsync.application.metrics.Metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metrics of a connection, looked up once per connection as the engine and the retry queue update them per track or
+ * chunk
+ */
+class ConnectionMetrics {
+    private static final Map<String, ConnectionMetrics> connections = new ConcurrentHashMap<>();
+
+    private final String connection;
+    private final Histogram syncSeconds;
+    private final Map<SyncResult, Counter> syncs = new ConcurrentHashMap<>();
+    private final Counter uploadedTracks;
+    private final Counter uploadedBytes;
+    private final Counter removedTracks;
+    private final Counter deferredTracks;
+    private final Map<String, Counter> failures = new ConcurrentHashMap<>();
+    private final Gauge retryQueue;
+
+    private ConnectionMetrics(String connection) {
+        this.connection = connection;
+        this.syncSeconds = Metrics.histogram("musicsync_sync_seconds", "Duration of syncing a connection", "connection", connection);
+        this.uploadedTracks = Metrics.counter("musicsync_tracks_uploaded_total", "Tracks uploaded to the output", "connection", connection);
+        this.uploadedBytes = Metrics.counter("musicsync_uploaded_bytes_total", "Bytes uploaded to the output", "connection", connection);
+        this.removedTracks = Metrics.counter("musicsync_tracks_removed_total", "Tracks removed from the output", "connection", connection);
+        this.deferredTracks = Metrics.counter("musicsync_tracks_deferred_total", "Tracks skipped because their next attempt is not due yet", "connection", connection);
+        this.retryQueue = Metrics.gauge("musicsync_retry_queue_tracks", "Tracks waiting for their next attempt", "connection", connection);
+    }
+
+    static ConnectionMetrics of(String connection) {
+        return connections.computeIfAbsent(connection, ConnectionMetrics::new);
+    }
+
+    /**
+     * @param start of the sync as of {@link System#nanoTime()}
+     */
+    void synced(SyncResult result, long start) {
+        syncSeconds.observeSince(start);
+        syncs.computeIfAbsent(result, key -> Metrics.counter("musicsync_syncs_total", "Syncs of a connection by result",
+                "connection", connection, "result", key.name())).inc();
+    }
+
+    void uploaded(int tracks, long bytes) {
+        uploadedTracks.add(tracks);
+        uploadedBytes.add(bytes);
+    }
+
+    void removed(int tracks) {
+        removedTracks.add(tracks);
+    }
+
+    void deferred() {
+        deferredTracks.inc();
+    }
+
+    /**
+     * @param operation which failed, download or upload
+     */
+    void failed(String operation) {
+        failures.computeIfAbsent(operation, key -> Metrics.counter("musicsync_track_failures_total", "Failed downloads and uploads of tracks",
+                "connection", connection, "operation", key)).inc();
+    }
+
+    void retryQueue(int tracks) {
+        retryQueue.set(tracks);
+    }
+}
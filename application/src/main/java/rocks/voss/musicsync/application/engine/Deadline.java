@@ -0,0 +1,33 @@
+package rocks.voss.musicsync.application.engine;
+
+/**
+ * Point in time after which a sync does not start with further tracks. Unlike the connection timeout it does not
+ * interrupt the sync, the current track is finished and the remaining tracks are left for the next run.
+ */
+public class Deadline {
+    public static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+    private final long time;
+
+    private Deadline(long time) {
+        this.time = time;
+    }
+
+    /**
+     * @param seconds from now, 0 or less for no deadline
+     */
+    public static Deadline after(int seconds) {
+        return seconds > 0 ? new Deadline(System.currentTimeMillis() + seconds * 1000L) : NONE;
+    }
+
+    /**
+     * @return the earlier of both deadlines
+     */
+    public Deadline min(Deadline other) {
+        return other.time < time ? other : this;
+    }
+
+    public boolean isExpired() {
+        return time != Long.MAX_VALUE && System.currentTimeMillis() >= time;
+    }
+}
@@ -0,0 +1,94 @@
+package rocks.voss.musicsync.application.engine;
+
+import rocks.voss.musicsync.api.SyncPlugin;
+import rocks.voss.musicsync.api.SyncTrack;
+
+import java.io.File;
+
+/**
+ * Track whose file was materialized by the pipeline. Path, size & modification time are recorded once, so uploads,
+ * metrics and the journal do not ask the input plugin again, which could probe or download the track once more.
+ */
+public class MaterializedTrack implements SyncTrack {
+    private final SyncTrack track;
+    private final String path;
+    private final long size;
+    private final long lastModified;
+
+    MaterializedTrack(SyncTrack track, String path) {
+        this.track = track;
+        this.path = path;
+        File file = path != null ? new File(path) : null;
+        this.size = file != null ? file.length() : 0;
+        this.lastModified = file != null ? file.lastModified() : 0;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return bytes of the file when it was materialized
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return milliseconds since the epoch the file was modified when it was materialized
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public SyncPlugin getPlugin() {
+        return track.getPlugin();
+    }
+
+    @Override
+    public String getId() {
+        return track.getId();
+    }
+
+    @Override
+    public String getUri() {
+        return track.getUri();
+    }
+
+    @Override
+    public String[] getArtists() {
+        return track.getArtists();
+    }
+
+    @Override
+    public String getName() {
+        return track.getName();
+    }
+
+    @Override
+    public int getTrackNumber() {
+        return track.getTrackNumber();
+    }
+
+    @Override
+    public int getTrackDuration() {
+        return track.getTrackDuration();
+    }
+
+    @Override
+    public String getAlbum() {
+        return track.getAlbum();
+    }
+
+    @Override
+    public boolean isFresh() {
+        return track.isFresh();
+    }
+
+    @Override
+    public String toString() {
+        return track.toString();
+    }
+}
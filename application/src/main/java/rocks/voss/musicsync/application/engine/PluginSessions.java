@@ -0,0 +1,101 @@
+package rocks.voss.musicsync.application.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncPlugin;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reference counts the endpoint sessions of plugins which are shared by concurrently running connections.
+ * The first connection using a plugin establishes its connection, the last one closes it again.
+ * A session established by the warm-up is handed over to the first connection using the plugin.
+ */
+public class PluginSessions {
+    final private static Logger log = LogManager.getLogger(PluginSessions.class);
+
+    private final Map<SyncPlugin, Integer> sessions = new HashMap<>();
+    private final Set<SyncPlugin> warm = new HashSet<>();
+
+    /**
+     * Establishes the connection of the plugin ahead of its first use
+     */
+    public void warmUp(SyncPlugin plugin) {
+        synchronized (plugin) {
+            if (getCount(plugin) > 0 || isWarm(plugin)) {
+                return;
+            }
+            log.debug("Warming up connection for plugin: " + plugin.getSchema());
+            plugin.establishConnection();
+            setWarm(plugin, true);
+        }
+    }
+
+    public void open(SyncPlugin plugin) {
+        synchronized (plugin) {
+            int count = getCount(plugin);
+            if (count == 0 && isWarm(plugin)) {
+                log.debug("Using warmed up connection for plugin: " + plugin.getSchema());
+                setWarm(plugin, false);
+            } else if (count == 0) {
+                log.debug("Establishing connection for plugin: " + plugin.getSchema());
+                plugin.establishConnection();
+            }
+            setCount(plugin, count + 1);
+        }
+    }
+
+    public void close(SyncPlugin plugin) {
+        synchronized (plugin) {
+            int count = getCount(plugin) - 1;
+            if (count <= 0) {
+                log.debug("Closing connection for plugin: " + plugin.getSchema());
+                setCount(plugin, 0);
+                plugin.closeConnection();
+            } else {
+                setCount(plugin, count);
+            }
+        }
+    }
+
+    /**
+     * Closes the connection of a plugin which was replaced by a new instance. If the plugin is still in use, its
+     * connection is closed by the last connection using it.
+     */
+    public void retire(SyncPlugin plugin) {
+        synchronized (plugin) {
+            if (getCount(plugin) == 0 && isWarm(plugin)) {
+                log.debug("Closing warmed up connection for retired plugin: " + plugin.getSchema());
+                setWarm(plugin, false);
+                plugin.closeConnection();
+            }
+        }
+    }
+
+    private synchronized boolean isWarm(SyncPlugin plugin) {
+        return warm.contains(plugin);
+    }
+
+    private synchronized void setWarm(SyncPlugin plugin, boolean isWarm) {
+        if (isWarm) {
+            warm.add(plugin);
+        } else {
+            warm.remove(plugin);
+        }
+    }
+
+    private synchronized int getCount(SyncPlugin plugin) {
+        return sessions.getOrDefault(plugin, 0);
+    }
+
+    private synchronized void setCount(SyncPlugin plugin, int count) {
+        if (count == 0) {
+            sessions.remove(plugin);
+        } else {
+            sessions.put(plugin, count);
+        }
+    }
+}
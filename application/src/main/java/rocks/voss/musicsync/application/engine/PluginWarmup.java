@@ -0,0 +1,81 @@
+package rocks.voss.musicsync.application.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncPlugin;
+import rocks.voss.musicsync.application.config.WarmupConfiguration;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Initializes and connects all plugins used by the connections concurrently, so the logins of different endpoints
+ * do not wait on each other. The warm-up runs in the background, a connection only waits for its own plugins.
+ * A plugin exceeding its timeout gets interrupted and is connected again on its first use.
+ */
+public class PluginWarmup {
+    final private static Logger log = LogManager.getLogger(PluginWarmup.class);
+
+    private final WarmupConfiguration config;
+    private final PluginSessions sessions;
+    private final ExecutorService executor = Executors.newCachedThreadPool(ThreadFactories.daemon("warmup"));
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(ThreadFactories.daemon("warmup-watchdog"));
+
+    PluginWarmup(WarmupConfiguration config, PluginSessions sessions) {
+        this.config = config;
+        this.sessions = sessions;
+    }
+
+    public void start(List<SyncConnection> connections) {
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        Map<String, Supplier<SyncPlugin>> plugins = new LinkedHashMap<>();
+        for (SyncConnection connection : connections) {
+            if (connection.getInputSchema() != null) {
+                plugins.putIfAbsent("in:" + connection.getInputSchema(), connection::getSyncInputPlugin);
+            }
+            if (connection.getOutputSchema() != null) {
+                plugins.putIfAbsent("out:" + connection.getOutputSchema(), connection::getSyncOutputPlugin);
+            }
+        }
+
+        for (Map.Entry<String, Supplier<SyncPlugin>> entry : plugins.entrySet()) {
+            String schema = entry.getKey().substring(entry.getKey().indexOf(':') + 1);
+            int timeout = config.getTimeouts().getOrDefault(schema, config.getTimeout());
+            Future<?> future = executor.submit(() -> warmUp(schema, entry.getValue()));
+            if (timeout > 0) {
+                watchdog.schedule(() -> {
+                    if (!future.isDone()) {
+                        log.error("Warm-up of plugin " + schema + " exceeded timeout of " + timeout + " seconds, interrupting");
+                        future.cancel(true);
+                    }
+                }, timeout, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private void warmUp(String schema, Supplier<SyncPlugin> supplier) {
+        long start = System.currentTimeMillis();
+        try {
+            SyncPlugin plugin = supplier.get();
+            if (plugin == null) {
+                log.error("Warm-up of plugin " + schema + " failed, plugin is not available");
+                return;
+            }
+            sessions.warmUp(plugin);
+            log.info("Plugin " + schema + " ready after " + (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception e) {
+            log.error("Warm-up of plugin " + schema + " failed", e);
+        }
+    }
+}
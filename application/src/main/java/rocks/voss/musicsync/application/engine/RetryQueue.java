@@ -0,0 +1,141 @@
+package rocks.voss.musicsync.application.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncException;
+import rocks.voss.musicsync.api.SyncTrack;
+import rocks.voss.musicsync.application.config.RetryConfiguration;
+import rocks.voss.musicsync.application.state.ConnectionState;
+import rocks.voss.musicsync.application.state.RetryState;
+import rocks.voss.musicsync.application.state.SyncJournal;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks whose download or upload failed are deferred with exponential backoff, so a track which fails every time
+ * does not hold up its connection in every cycle. The queue is kept in the journal and survives restarts, a track
+ * leaves it with its first successful upload.
+ */
+public class RetryQueue {
+    final private static Logger log = LogManager.getLogger(RetryQueue.class);
+
+    private final RetryConfiguration config;
+    private final SyncJournal journal;
+    private final Map<String, Map<String, RetryState>> retries = new ConcurrentHashMap<>();
+
+    RetryQueue(RetryConfiguration config, SyncJournal journal) {
+        this.config = config;
+        this.journal = journal;
+    }
+
+    /**
+     * @return true if the track failed before and its next attempt is not due yet
+     */
+    public boolean isDeferred(SyncConnection connection, SyncTrack track) {
+        RetryState retry = getRetries(connection.getName()).get(track.getId());
+        if (retry == null || System.currentTimeMillis() >= retry.getNextAttempt()) {
+            return false;
+        }
+        log.debug("Deferring track " + track.getId() + " of connection " + connection.getName() + " until " + retry.getNextAttempt());
+        ConnectionMetrics.of(connection.getName()).deferred();
+        return true;
+    }
+
+    /**
+     * Records a failed operation of the track and defers it
+     *
+     * @param operation which failed, download or upload
+     */
+    public void failed(SyncConnection connection, SyncTrack track, String operation, RuntimeException e) {
+        Map<String, RetryState> connectionRetries = getRetries(connection.getName());
+        RetryState previous = connectionRetries.get(track.getId());
+        int attempts = previous != null ? previous.getAttempts() + 1 : 1;
+        long delay = getDelay(attempts);
+        Throwable error = e instanceof SyncException && e.getCause() != null ? e.getCause() : e;
+        RetryState retry = new RetryState(track.getId(), operation, error.getClass().getName(), attempts, System.currentTimeMillis() + delay * 1000);
+        connectionRetries.put(track.getId(), retry);
+        log.error("Failed to " + operation + " track " + track.getId() + " of connection " + connection.getName()
+                + " (attempt " + attempts + "), retrying in " + delay + " seconds: " + e.getMessage(), error);
+
+        ConnectionMetrics.of(connection.getName()).failed(operation);
+        updateGauge(connection.getName(), connectionRetries);
+        if (journal != null) {
+            try {
+                journal.failed(connection.getName(), retry);
+            } catch (IOException ioe) {
+                log.error("Could not write journal", ioe);
+            }
+        }
+    }
+
+    /**
+     * Drops the track from the queue after it was uploaded
+     */
+    public void succeeded(SyncConnection connection, SyncTrack track) {
+        Map<String, RetryState> connectionRetries = getRetries(connection.getName());
+        RetryState retry = connectionRetries.remove(track.getId());
+        if (retry == null) {
+            return;
+        }
+        log.info("Track " + track.getId() + " of connection " + connection.getName() + " succeeded after " + retry.getAttempts() + " failed attempts");
+        updateGauge(connection.getName(), connectionRetries);
+        if (journal != null) {
+            try {
+                journal.recovered(connection.getName(), track.getId());
+            } catch (IOException e) {
+                log.error("Could not write journal", e);
+            }
+        }
+    }
+
+    /**
+     * Drops the queue of a connection, the journal is reset by the caller
+     */
+    public void forget(String connection) {
+        retries.remove(connection);
+        ConnectionMetrics.of(connection).retryQueue(0);
+    }
+
+    /**
+     * Logs the tracks of the connection which are in the queue
+     */
+    public void report(SyncConnection connection) {
+        Map<String, RetryState> connectionRetries = getRetries(connection.getName());
+        if (connectionRetries.isEmpty()) {
+            return;
+        }
+        log.info("Connection " + connection.getName() + " has " + connectionRetries.size() + " failed tracks in the retry queue");
+        long now = System.currentTimeMillis();
+        for (RetryState retry : connectionRetries.values()) {
+            log.debug("Track " + retry.getId() + ": " + retry.getOperation() + " failed " + retry.getAttempts() + " times with "
+                    + retry.getError() + ", next attempt in " + Math.max(0, (retry.getNextAttempt() - now) / 1000) + " seconds");
+        }
+    }
+
+    private long getDelay(int attempts) {
+        long delay = Math.max(1, config.getInitialDelay());
+        for (int i = 1; i < attempts && delay < config.getMaxDelay(); i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, Math.max(1, config.getMaxDelay()));
+    }
+
+    private Map<String, RetryState> getRetries(String connection) {
+        return retries.computeIfAbsent(connection, key -> {
+            Map<String, RetryState> connectionRetries = new ConcurrentHashMap<>();
+            ConnectionState state = journal != null ? journal.getState(key) : null;
+            if (state != null) {
+                connectionRetries.putAll(state.getRetries());
+            }
+            updateGauge(key, connectionRetries);
+            return connectionRetries;
+        });
+    }
+
+    private static void updateGauge(String connection, Map<String, RetryState> connectionRetries) {
+        ConnectionMetrics.of(connection).retryQueue(connectionRetries.size());
+    }
+}
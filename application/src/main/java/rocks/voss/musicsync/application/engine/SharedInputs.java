@@ -0,0 +1,120 @@
+package rocks.voss.musicsync.application.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncInputPlugin;
+import rocks.voss.musicsync.api.SyncPlugin;
+import rocks.voss.musicsync.api.SyncTrack;
+import rocks.voss.musicsync.application.config.FanoutConfiguration;
+import rocks.voss.musicsync.application.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares the track list and the materialized tracks of an input between all connections which read the same input
+ * plugin with the same configuration, e.g. a playlist synced to several outputs. The track list is fetched once and
+ * every track is downloaded once, all connections of the input get the same tracks.
+ * Within the window the fingerprint & track list are reused right away. After it the fingerprint is fetched again
+ * and the track list is only reused if the input did not change, an input without fingerprint is listed again.
+ */
+public class SharedInputs {
+    final private static Logger log = LogManager.getLogger(SharedInputs.class);
+    final private static long IDLE = 24 * 60 * 60 * 1000L;
+
+    private final FanoutConfiguration config;
+    private final Map<List<Object>, Input> inputs = new ConcurrentHashMap<>();
+
+    SharedInputs(FanoutConfiguration config) {
+        this.config = config;
+    }
+
+    /**
+     * @return key of the input of the connection, connections with the same key read the same tracks
+     */
+    static List<Object> getInputKey(SyncConnection connection) {
+        return Arrays.asList(connection.getInputSchema(), connection.getInputConfig());
+    }
+
+    public String getTracklistFingerprint(SyncConnection connection) {
+        SyncInputPlugin plugin = connection.getSyncInputPlugin();
+        if (!config.isEnabled()) {
+            return plugin.getTracklistFingerprint(connection);
+        }
+        Input input = getInput(connection);
+        synchronized (input) {
+            long now = System.currentTimeMillis();
+            if (now - input.checked < config.getWindow() * 1000L) {
+                log.debug("Reusing fingerprint of input " + connection.getInputSchema() + " for connection: " + connection.getName());
+                return input.fingerprint;
+            }
+            String fingerprint = plugin.getTracklistFingerprint(connection);
+            if (fingerprint == null || !fingerprint.equals(input.fingerprint)) {
+                input.tracks = null;
+            }
+            input.fingerprint = fingerprint;
+            input.checked = now;
+            return fingerprint;
+        }
+    }
+
+    /**
+     * @return tracks of the input, the same instances for all connections reading it
+     */
+    public List<SyncTrack> getTracklist(SyncConnection connection) {
+        SyncInputPlugin plugin = connection.getSyncInputPlugin();
+        if (!config.isEnabled()) {
+            return plugin.getTracklist(connection);
+        }
+        Input input = getInput(connection);
+        synchronized (input) {
+            if (input.tracks != null) {
+                log.debug("Reusing track list of input " + connection.getInputSchema() + " for connection: " + connection.getName());
+                Metrics.counter("musicsync_shared_tracklists_total", "Track lists reused from another connection of the same input", "plugin", connection.getInputSchema()).inc();
+                return input.tracks;
+            }
+            List<SyncTrack> tracks = plugin.getTracklist(connection);
+            if (tracks == null) {
+                return null;
+            }
+            List<SyncTrack> shared = new ArrayList<>(tracks.size());
+            for (SyncTrack track : tracks) {
+                shared.add(new SharedTrack(track, config.getWindow() * 1000L));
+            }
+            input.tracks = shared;
+            return shared;
+        }
+    }
+
+    /**
+     * Drops the inputs read by a plugin instance which is not used anymore
+     */
+    public void retire(SyncPlugin plugin) {
+        inputs.values().removeIf(input -> input.plugin == plugin);
+    }
+
+    private Input getInput(SyncConnection connection) {
+        long now = System.currentTimeMillis();
+        inputs.values().removeIf(input -> now - input.used > IDLE);
+        SyncInputPlugin plugin = connection.getSyncInputPlugin();
+        Input input = inputs.compute(getInputKey(connection), (key, current) -> current != null && current.plugin == plugin ? current : new Input(plugin));
+        input.used = now;
+        return input;
+    }
+
+    private static class Input {
+        private final SyncInputPlugin plugin;
+        private volatile long used;
+        private String fingerprint;
+        private long checked;
+        private List<SyncTrack> tracks;
+
+        Input(SyncInputPlugin plugin) {
+            this.plugin = plugin;
+        }
+    }
+}
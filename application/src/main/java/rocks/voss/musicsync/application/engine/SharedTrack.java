@@ -0,0 +1,94 @@
+package rocks.voss.musicsync.application.engine;
+
+import rocks.voss.musicsync.api.SyncException;
+import rocks.voss.musicsync.api.SyncPlugin;
+import rocks.voss.musicsync.api.SyncTrack;
+
+import java.io.File;
+
+/**
+ * Track of a shared input, the track of the input plugin is materialized once for all connections reading it.
+ * A connection asking while the track is materialized waits for it. A failure is shared within the window, so the
+ * connections of the input do not all try a broken download again.
+ */
+class SharedTrack implements SyncTrack {
+    private final SyncTrack track;
+    private final long window;
+    private String path;
+    private SyncException failure;
+    private long failed;
+
+    SharedTrack(SyncTrack track, long window) {
+        this.track = track;
+        this.window = window;
+    }
+
+    @Override
+    public synchronized String getPath() {
+        if (failure != null && System.currentTimeMillis() - failed < window) {
+            throw failure;
+        }
+        // the file may have been removed from the cache since
+        if (path == null || !new File(path).isFile()) {
+            try {
+                path = track.getPath();
+                failure = null;
+            } catch (SyncException e) {
+                failure = e;
+                failed = System.currentTimeMillis();
+                throw e;
+            }
+        }
+        return path;
+    }
+
+    @Override
+    public SyncPlugin getPlugin() {
+        return track.getPlugin();
+    }
+
+    @Override
+    public String getId() {
+        return track.getId();
+    }
+
+    @Override
+    public String getUri() {
+        return track.getUri();
+    }
+
+    @Override
+    public String[] getArtists() {
+        return track.getArtists();
+    }
+
+    @Override
+    public String getName() {
+        return track.getName();
+    }
+
+    @Override
+    public int getTrackNumber() {
+        return track.getTrackNumber();
+    }
+
+    @Override
+    public int getTrackDuration() {
+        return track.getTrackDuration();
+    }
+
+    @Override
+    public String getAlbum() {
+        return track.getAlbum();
+    }
+
+    @Override
+    public boolean isFresh() {
+        return track.isFresh();
+    }
+
+    @Override
+    public String toString() {
+        return track.toString();
+    }
+}
@@ -0,0 +1,722 @@
+package rocks.voss.musicsync.application.engine;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncException;
+import rocks.voss.musicsync.api.SyncInputPlugin;
+import rocks.voss.musicsync.api.SyncOutputPlugin;
+import rocks.voss.musicsync.api.SyncPlan;
+import rocks.voss.musicsync.api.SyncPlugin;
+import rocks.voss.musicsync.api.SyncTargetTrack;
+import rocks.voss.musicsync.api.SyncTrack;
+import rocks.voss.musicsync.application.config.BudgetConfiguration;
+import rocks.voss.musicsync.application.config.GeneralConfiguration;
+import rocks.voss.musicsync.application.config.JournalConfiguration;
+import rocks.voss.musicsync.application.metrics.SyncEvent;
+import rocks.voss.musicsync.application.state.Checkpoint;
+import rocks.voss.musicsync.application.state.ConnectionState;
+import rocks.voss.musicsync.application.state.SyncJournal;
+import rocks.voss.musicsync.application.state.TrackState;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+public class SyncEngine {
+    final private static Logger log = LogManager.getLogger(SyncEngine.class);
+
+    private final GeneralConfiguration config;
+    private final PluginSessions sessions = new PluginSessions();
+    private final SyncPipeline pipeline;
+    private final PluginWarmup warmup;
+    private final SyncJournal journal;
+    private final RetryQueue retries;
+    private final SharedInputs inputs;
+    private final ConnectionLeases leases;
+    private final SyncOrder order;
+    private final Map<String, SyncProgress> running = new ConcurrentHashMap<>();
+
+    public SyncEngine(GeneralConfiguration config, Tuning tuning, ConnectionLeases leases) {
+        this.config = config;
+        this.leases = leases;
+        this.pipeline = new SyncPipeline(config.getPipeline(), tuning);
+        this.warmup = new PluginWarmup(config.getWarmup(), sessions);
+        this.journal = createJournal(config.getJournal(), leases);
+        this.retries = new RetryQueue(config.getRetry(), journal);
+        this.inputs = new SharedInputs(config.getFanout());
+        this.order = new SyncOrder(config.getScheduler(), journal);
+    }
+
+    private static SyncJournal createJournal(JournalConfiguration config, ConnectionLeases leases) {
+        if (StringUtils.isBlank(config.getFile())) {
+            return null;
+        }
+        File file = new File(config.getFile());
+        if (leases.isEnabled()) {
+            // every instance of a cluster keeps its own journal, even if they share the configuration
+            String name = file.getName();
+            int extension = name.lastIndexOf('.') > 0 ? name.lastIndexOf('.') : name.length();
+            file = new File(file.getParentFile(), name.substring(0, extension) + "." + leases.getInstance() + name.substring(extension));
+        }
+        SyncJournal journal = new SyncJournal(file, config.getCompactThreshold());
+        try {
+            journal.load();
+            return journal;
+        } catch (IOException e) {
+            log.error("Could not load journal, continuing without it", e);
+            return null;
+        }
+    }
+
+    /**
+     * Initializes and connects the plugins of the connections in the background
+     */
+    public void warmUp(List<SyncConnection> connections) {
+        warmup.start(connections);
+    }
+
+    /**
+     * Closes the connection of a plugin instance which is not used by new syncs anymore
+     */
+    public void retire(SyncPlugin plugin) {
+        inputs.retire(plugin);
+        sessions.retire(plugin);
+    }
+
+    /**
+     * Gives up the lease of a connection which is not synced by this instance anymore
+     */
+    public void release(String connection) {
+        leases.release(connection);
+    }
+
+    /**
+     * Drops the journal state and the retry queue of a connection, so it is synced completely next time
+     */
+    public void forget(String connection) {
+        retries.forget(connection);
+        order.forget(connection);
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.reset(connection);
+        } catch (IOException e) {
+            log.error("Could not reset journal of connection: " + connection, e);
+        }
+    }
+
+    /**
+     * @return order of the connections waiting for a thread, based on the expected durations of their syncs
+     */
+    public SyncOrder getOrder() {
+        return order;
+    }
+
+    /**
+     * @return progress of the connections which are synced at the moment
+     */
+    public Collection<SyncProgress> getProgress() {
+        return running.values();
+    }
+
+    public SyncResult sync(SyncConnection connection) {
+        return sync(connection, Deadline.NONE);
+    }
+
+    /**
+     * @param cycle deadline of the whole cycle, the connection stops at the earlier of it and its own budget
+     */
+    public SyncResult sync(SyncConnection connection, Deadline cycle) {
+        if (!leases.acquire(connection.getName())) {
+            log.debug("Connection " + connection.getName() + " is synced by another instance");
+            return SyncResult.SKIPPED;
+        }
+        try {
+            return syncLeased(connection, cycle);
+        } finally {
+            leases.completed(connection.getName());
+        }
+    }
+
+    private SyncResult syncLeased(SyncConnection connection, Deadline cycle) {
+        BudgetConfiguration budget = config.getBudget();
+        Deadline deadline = cycle.min(Deadline.after(budget.getConnections().getOrDefault(connection.getName(), budget.getConnection())));
+        if (deadline.isExpired()) {
+            log.info("Budget of the cycle is used up, deferring connection: " + connection.getName());
+            return SyncResult.INCOMPLETE;
+        }
+
+        long start = System.nanoTime();
+        running.put(connection.getName(), new SyncProgress(connection.getName()));
+        SyncEvent event = new SyncEvent(connection.getName(), connection.getInputSchema(), connection.getOutputSchema());
+        event.begin();
+        SyncResult result = SyncResult.FAILED;
+        try {
+            result = syncConnection(connection, deadline);
+            return result;
+        } finally {
+            running.remove(connection.getName());
+            order.completed(connection.getName(), result, (System.nanoTime() - start) / 1_000_000);
+            event.setResult(result.name());
+            event.commit();
+            ConnectionMetrics.of(connection.getName()).synced(result, start);
+        }
+    }
+
+    private SyncResult syncConnection(SyncConnection connection, Deadline deadline) {
+        try {
+            SyncInputPlugin inputPlugin = connection.getSyncInputPlugin();
+            SyncOutputPlugin outputPlugin = connection.getSyncOutputPlugin();
+
+            log.info("Working on connection: " + connection.getName());
+            retries.report(connection);
+
+            if (inputPlugin == null || outputPlugin == null) {
+                log.error("One is null\nInputPlugin: " + inputPlugin + ", outputPlugin: " + outputPlugin);
+                return SyncResult.FAILED;
+            }
+
+            sessions.open(inputPlugin);
+            try {
+                String fingerprint = inputs.getTracklistFingerprint(connection);
+                ConnectionState state = journal != null ? journal.getState(connection.getName()) : null;
+                if (isUnchanged(state, fingerprint)) {
+                    log.info("Tracklist unchanged, skipping connection: " + connection.getName());
+                    return SyncResult.UNCHANGED;
+                }
+                Checkpoint checkpoint = getCheckpoint(state, fingerprint);
+
+                sessions.open(outputPlugin);
+                try {
+                    getProgress(connection).stage("listing", 0);
+                    log.debug("Requesting track list of connection: " + connection.getName());
+                    List<SyncTrack> tracks = inputs.getTracklist(connection);
+                    if (checkpoint != null) {
+                        log.info("Resuming connection " + connection.getName() + " with " + checkpoint.getPending().size() + " pending tracks");
+                        List<SyncTrack> pending = getPending(tracks, checkpoint);
+                        if (checkpoint.isPlanned()) {
+                            List<SyncTrack> unchanged = new ArrayList<>(tracks);
+                            unchanged.removeAll(pending);
+                            SyncPlan plan = new SyncPlan(tracks, pending, List.of(), unchanged, false);
+                            return syncPlanned(connection, plan, null, state, fingerprint, deadline);
+                        }
+                        return syncUnplanned(connection, tracks, pending, true, fingerprint, deadline);
+                    }
+
+                    List<SyncTargetTrack> targetTracks = outputPlugin.getTargetTracks(connection);
+                    if (targetTracks != null) {
+                        SyncPlan plan = SyncPlanner.plan(connection, tracks, targetTracks, (track, targetTrack) -> isVerified(state, track, targetTrack));
+                        return syncPlanned(connection, plan, targetTracks, state, fingerprint, deadline);
+                    }
+                    return syncUnplanned(connection, tracks, tracks, false, fingerprint, deadline);
+                } finally {
+                    sessions.close(outputPlugin);
+                }
+            } finally {
+                sessions.close(inputPlugin);
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted while working on connection: " + connection.getName());
+        } catch (Exception e) {
+            log.error("Exception", e);
+        }
+        return SyncResult.FAILED;
+    }
+
+    private boolean isUnchanged(ConnectionState state, String fingerprint) {
+        if (state == null || fingerprint == null || !fingerprint.equals(state.getFingerprint())) {
+            return false;
+        }
+        return System.currentTimeMillis() - state.getTimestamp() < config.getJournal().getVerifyInterval() * 1000L;
+    }
+
+    /**
+     * @return checkpoint to resume from, null if there is none or the input changed since
+     */
+    private Checkpoint getCheckpoint(ConnectionState state, String fingerprint) {
+        if (state == null || state.getCheckpoint() == null) {
+            return null;
+        }
+        Checkpoint checkpoint = state.getCheckpoint();
+        if (fingerprint == null || !fingerprint.equals(checkpoint.getFingerprint())
+                || System.currentTimeMillis() - checkpoint.getTimestamp() > config.getJournal().getVerifyInterval() * 1000L) {
+            log.info("Input changed since the checkpoint, syncing from scratch");
+            return null;
+        }
+        return checkpoint;
+    }
+
+    private static List<SyncTrack> getPending(List<SyncTrack> tracks, Checkpoint checkpoint) {
+        Set<String> ids = new HashSet<>(checkpoint.getPending());
+        List<SyncTrack> pending = new ArrayList<>(ids.size());
+        for (SyncTrack track : tracks) {
+            if (ids.contains(track.getId())) {
+                pending.add(track);
+            }
+        }
+        return pending;
+    }
+
+    private static List<String> getIds(List<SyncTrack> tracks) {
+        List<String> ids = new ArrayList<>(tracks.size());
+        for (SyncTrack track : tracks) {
+            ids.add(track.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Syncs the connection by a plan, for output plugins which list their target tracks
+     *
+     * @param targetTracks tracks on the target the plan was made from, null if the plan was resumed from a checkpoint
+     */
+    private SyncResult syncPlanned(SyncConnection connection, SyncPlan plan, List<SyncTargetTrack> targetTracks, ConnectionState state, String fingerprint, Deadline deadline) throws InterruptedException {
+        Map<String, MaterializedTrack> uploaded = new ConcurrentHashMap<>();
+        List<SyncTrack> pending = syncPlan(connection, plan, fingerprint, uploaded, deadline);
+        Checkpoint checkpoint = null;
+        if (!pending.isEmpty()) {
+            checkpoint = new Checkpoint(fingerprint, true, System.currentTimeMillis(), getIds(pending));
+        }
+        record(connection, plan, targetTracks, state, fingerprint, uploaded, checkpoint);
+        if (checkpoint != null) {
+            return SyncResult.INCOMPLETE;
+        }
+        return plan.isEmpty() ? SyncResult.UNCHANGED : SyncResult.CHANGED;
+    }
+
+    /**
+     * Syncs the connection track by track, for output plugins which do not list their target tracks
+     *
+     * @param pending tracks which still need to be checked, all tracks unless resumed from a checkpoint
+     * @param resumed true if the clean up was done by the run which created the checkpoint
+     */
+    private SyncResult syncUnplanned(SyncConnection connection, List<SyncTrack> tracks, List<SyncTrack> pending, boolean resumed, String fingerprint, Deadline deadline) throws InterruptedException {
+        Set<String> done = ConcurrentHashMap.newKeySet();
+        SyncResult result = config.isBulk()
+                ? syncBulk(connection, tracks, pending, resumed, fingerprint, done, deadline)
+                : syncItemized(connection, tracks, pending, resumed, done, deadline);
+
+        Checkpoint checkpoint = null;
+        if (result == SyncResult.INCOMPLETE) {
+            List<String> remaining = new ArrayList<>(pending.size());
+            for (SyncTrack track : pending) {
+                if (!done.contains(track.getId())) {
+                    remaining.add(track.getId());
+                }
+            }
+            checkpoint = new Checkpoint(fingerprint, false, System.currentTimeMillis(), remaining);
+        }
+        if (journal != null && fingerprint != null) {
+            try {
+                journal.checkpoint(connection.getName(), checkpoint);
+            } catch (IOException e) {
+                log.error("Could not write journal", e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records the tracks which are not done after a chunk was uploaded, so a sync which crashes resumes behind it
+     *
+     * @param planned true if the tracks to remove were removed already
+     * @param done    true for the tracks which were uploaded or given up
+     */
+    private void checkpoint(SyncConnection connection, String fingerprint, boolean planned, List<SyncTrack> pending, Predicate<SyncTrack> done) {
+        if (journal == null || fingerprint == null) {
+            return;
+        }
+        List<String> remaining = new ArrayList<>(pending.size());
+        for (SyncTrack track : pending) {
+            if (!done.test(track)) {
+                remaining.add(track.getId());
+            }
+        }
+        if (remaining.isEmpty()) {
+            return;
+        }
+        try {
+            journal.checkpoint(connection.getName(), new Checkpoint(fingerprint, planned, System.currentTimeMillis(), remaining));
+        } catch (IOException e) {
+            log.error("Could not write journal", e);
+        }
+    }
+
+    private void stopped(SyncConnection connection, int pending) {
+        log.info("Deadline reached, stopping connection " + connection.getName() + " with " + pending + " tracks pending");
+    }
+
+    private boolean isVerified(ConnectionState state, SyncTrack track, SyncTargetTrack targetTrack) {
+        if (state == null) {
+            return false;
+        }
+        TrackState trackState = state.getTracks().get(targetTrack.getKey());
+        return trackState != null
+                && StringUtils.equals(trackState.getId(), track.getId())
+                && trackState.getTrackDuration() == track.getTrackDuration()
+                && trackState.getTargetDuration() == targetTrack.getTrackDuration()
+                && isFileUnchanged(trackState);
+    }
+
+    private boolean isFileUnchanged(TrackState trackState) {
+        if (trackState.getPath() == null) {
+            return true;
+        }
+        File file = new File(trackState.getPath());
+        return file.length() == trackState.getSize() && file.lastModified() == trackState.getLastModified();
+    }
+
+    /**
+     * Records the state of the target after the plan was applied. The fingerprint is only recorded if all tracks
+     * made it to the target, so a failed upload is retried in the next cycle.
+     *
+     * @param uploaded   tracks uploaded by this sync by their id
+     * @param checkpoint of a sync stopped by its deadline, null if the plan was applied completely
+     */
+    private void record(SyncConnection connection, SyncPlan plan, List<SyncTargetTrack> targetTracks, ConnectionState state, String fingerprint, Map<String, MaterializedTrack> uploaded, Checkpoint checkpoint) {
+        if (journal == null) {
+            return;
+        }
+        SyncOutputPlugin outputPlugin = connection.getSyncOutputPlugin();
+        List<SyncTargetTrack> currentTracks = plan.isEmpty() && targetTracks != null ? targetTracks : outputPlugin.getTargetTracks(connection);
+        if (currentTracks == null) {
+            try {
+                // a checkpoint of an uploaded chunk must not outlive the sync, it would upload the chunk again
+                journal.checkpoint(connection.getName(), checkpoint);
+            } catch (IOException e) {
+                log.error("Could not write journal", e);
+            }
+            return;
+        }
+
+        Map<String, SyncTargetTrack> targetIndex = new HashMap<>(currentTracks.size() * 2);
+        for (SyncTargetTrack targetTrack : currentTracks) {
+            targetIndex.putIfAbsent(targetTrack.getKey(), targetTrack);
+        }
+        Set<String> added = new HashSet<>(plan.getToAdd().size() * 2);
+        for (SyncTrack track : plan.getToAdd()) {
+            added.add(outputPlugin.getTrackKey(track));
+        }
+
+        boolean complete = true;
+        List<TrackState> trackStates = new ArrayList<>(plan.getTracks().size());
+        for (SyncTrack track : plan.getTracks()) {
+            String key = outputPlugin.getTrackKey(track);
+            SyncTargetTrack targetTrack = targetIndex.get(key);
+            if (targetTrack == null) {
+                if (checkpoint == null) {
+                    log.info("Track missing on target after sync: " + key);
+                }
+                complete = false;
+                continue;
+            }
+            TrackState previous = state != null ? state.getTracks().get(key) : null;
+            TrackState trackState = new TrackState(key, track.getId(), null, 0, 0, track.getTrackDuration(), targetTrack.getTrackDuration());
+            MaterializedTrack materialized = added.contains(key) ? uploaded.get(track.getId()) : null;
+            if (materialized != null && materialized.getPath() != null) {
+                trackState.setPath(new File(materialized.getPath()).getAbsolutePath());
+                trackState.setSize(materialized.getSize());
+                trackState.setLastModified(materialized.getLastModified());
+            } else if (previous != null) {
+                trackState.setPath(previous.getPath());
+                trackState.setSize(previous.getSize());
+                trackState.setLastModified(previous.getLastModified());
+            }
+            trackStates.add(trackState);
+        }
+
+        Set<String> removedKeys = new HashSet<>();
+        if (state != null) {
+            removedKeys.addAll(state.getTracks().keySet());
+            for (TrackState trackState : trackStates) {
+                removedKeys.remove(trackState.getKey());
+            }
+        }
+
+        try {
+            journal.commit(connection.getName(), complete ? fingerprint : null, trackStates, removedKeys, checkpoint);
+        } catch (IOException e) {
+            log.error("Could not write journal", e);
+        }
+    }
+
+    /**
+     * @param uploaded receives the tracks which were uploaded by their id
+     * @return tracks which were not uploaded because the deadline expired, empty if the plan was applied completely
+     */
+    private List<SyncTrack> syncPlan(SyncConnection connection, SyncPlan plan, String fingerprint, Map<String, MaterializedTrack> uploaded, Deadline deadline) throws InterruptedException {
+        SyncOutputPlugin outputPlugin = connection.getSyncOutputPlugin();
+
+        if (plan.isEmpty()) {
+            log.info("Nothing to sync for connection: " + connection.getName());
+            return List.of();
+        }
+        if (!plan.getToRemove().isEmpty() || plan.isReorder()) {
+            getProgress(connection).stage("cleaning up", plan.getToRemove().size());
+            checkLease(connection);
+            outputPlugin.applySyncPlan(connection, plan);
+            removed(connection, plan.getToRemove().size());
+        }
+        if (plan.getToAdd().isEmpty()) {
+            return List.of();
+        }
+
+        SyncProgress progress = getProgress(connection);
+        progress.stage("uploading", plan.getToAdd().size());
+        boolean complete;
+        // failed & deferred tracks are missing on the target, so the fingerprint is not recorded and they are retried
+        // ids as the tracks of some inputs change their hash code on download
+        Set<String> skipped = ConcurrentHashMap.newKeySet();
+        Predicate<SyncTrack> resolve = track -> {
+            if (retries.isDeferred(connection, track)) {
+                skipped.add(track.getId());
+                return false;
+            }
+            return true;
+        };
+        BiConsumer<SyncTrack, RuntimeException> failed = (track, e) -> {
+            skipped.add(track.getId());
+            retries.failed(connection, track, "download", e);
+        };
+        if (config.isBulk()) {
+            TrackChunk chunk = new TrackChunk(config.getChunk(), materialized -> {
+                for (MaterializedTrack track : uploadBulk(connection, materialized)) {
+                    uploaded.put(track.getId(), track);
+                }
+                for (MaterializedTrack track : materialized) {
+                    if (!uploaded.containsKey(track.getId())) {
+                        skipped.add(track.getId());
+                    }
+                }
+                checkpoint(connection, fingerprint, true, plan.getToAdd(), track -> uploaded.containsKey(track.getId()) || skipped.contains(track.getId()));
+            });
+            complete = pipeline.run(connection, plan.getToAdd(), resolve, track -> {
+                chunk.add(track);
+                progress.done();
+            }, failed, deadline);
+            chunk.flush();
+        } else {
+            complete = pipeline.run(connection, plan.getToAdd(), resolve, track -> {
+                if (upload(connection, track)) {
+                    uploaded.put(track.getId(), track);
+                } else {
+                    skipped.add(track.getId());
+                }
+                progress.done();
+            }, failed, deadline);
+        }
+        if (!complete) {
+            List<SyncTrack> pending = new ArrayList<>(plan.getToAdd().size());
+            for (SyncTrack track : plan.getToAdd()) {
+                if (!uploaded.containsKey(track.getId()) && !skipped.contains(track.getId())) {
+                    pending.add(track);
+                }
+            }
+            stopped(connection, pending.size());
+            return pending;
+        }
+        outputPlugin.orderTracks(connection, plan.getTracks());
+        return List.of();
+    }
+
+    /**
+     * @param done receives the ids of the tracks which are on the target
+     */
+    private SyncResult syncItemized(SyncConnection connection, List<SyncTrack> tracks, List<SyncTrack> pending, boolean resumed, Set<String> done, Deadline deadline) throws InterruptedException {
+        SyncOutputPlugin outputPlugin = connection.getSyncOutputPlugin();
+        SyncProgress progress = getProgress(connection);
+        AtomicInteger uploadedTracks = new AtomicInteger();
+        // resolving & uploading run in different pipeline stages, the output plugin is called by one at a time
+        Object outputLock = new Object();
+
+        if (!resumed) {
+            outputPlugin.cleanUpTracks(connection, tracks);
+        }
+        progress.stage("uploading", pending.size());
+        boolean complete = pipeline.run(connection, pending,
+                track -> {
+                    if (retries.isDeferred(connection, track)) {
+                        return false;
+                    }
+                    synchronized (outputLock) {
+                        if (outputPlugin.isTrackUploaded(connection, track)) {
+                            done.add(track.getId());
+                            return false;
+                        }
+                        return true;
+                    }
+                },
+                track -> {
+                    boolean succeeded;
+                    synchronized (outputLock) {
+                        succeeded = upload(connection, track);
+                    }
+                    if (succeeded) {
+                        done.add(track.getId());
+                        uploadedTracks.incrementAndGet();
+                    }
+                    progress.done();
+                },
+                (track, e) -> retries.failed(connection, track, "download", e), deadline);
+        if (!complete) {
+            stopped(connection, pending.size() - done.size());
+            return SyncResult.INCOMPLETE;
+        }
+        outputPlugin.orderTracks(connection, tracks);
+        return uploadedTracks.get() > 0 || resumed ? SyncResult.CHANGED : SyncResult.UNCHANGED;
+    }
+
+    /**
+     * @param done receives the ids of the tracks which are on the target
+     */
+    private SyncResult syncBulk(SyncConnection connection, List<SyncTrack> tracks, List<SyncTrack> pending, boolean resumed, String fingerprint, Set<String> done, Deadline deadline) throws InterruptedException {
+        SyncOutputPlugin outputPlugin = connection.getSyncOutputPlugin();
+
+        SyncProgress progress = getProgress(connection);
+        AtomicInteger uploadedTracks = new AtomicInteger();
+        AtomicBoolean cleanedUp = new AtomicBoolean(resumed);
+        // resolving & uploading run in different pipeline stages, the output plugin is called by one at a time
+        Object outputLock = new Object();
+        TrackChunk chunk = new TrackChunk(config.getChunk(), materialized -> {
+            synchronized (outputLock) {
+                // the target is cleaned up right before the first upload
+                if (cleanedUp.compareAndSet(false, true)) {
+                    outputPlugin.cleanUpTracks(connection, tracks);
+                }
+                for (MaterializedTrack track : uploadBulk(connection, materialized)) {
+                    done.add(track.getId());
+                    uploadedTracks.incrementAndGet();
+                }
+            }
+            checkpoint(connection, fingerprint, false, pending, track -> done.contains(track.getId()));
+        });
+
+        progress.stage("downloading", pending.size());
+        boolean complete = pipeline.run(connection, pending,
+                track -> {
+                    if (retries.isDeferred(connection, track)) {
+                        return false;
+                    }
+                    synchronized (outputLock) {
+                        if (outputPlugin.isTrackUploaded(connection, track)) {
+                            done.add(track.getId());
+                            return false;
+                        }
+                        return true;
+                    }
+                },
+                track -> {
+                    chunk.add(track);
+                    progress.done();
+                },
+                (track, e) -> retries.failed(connection, track, "download", e), deadline);
+        progress.stage("uploading", chunk.size());
+        chunk.flush();
+        synchronized (outputLock) {
+            if (cleanedUp.compareAndSet(false, true)) {
+                outputPlugin.cleanUpTracks(connection, tracks);
+            }
+        }
+        if (!complete) {
+            stopped(connection, pending.size() - done.size());
+            return SyncResult.INCOMPLETE;
+        }
+        outputPlugin.orderTracks(connection, tracks);
+        return uploadedTracks.get() == 0 && !resumed ? SyncResult.UNCHANGED : SyncResult.CHANGED;
+    }
+
+    /**
+     * @return false if the upload failed, the track is deferred then
+     */
+    private boolean upload(SyncConnection connection, MaterializedTrack track) {
+        checkLease(connection);
+        try {
+            connection.getSyncOutputPlugin().uploadTrack(connection, track);
+        } catch (SyncException e) {
+            if (e.getTrack() == null) {
+                throw e;
+            }
+            retries.failed(connection, track, "upload", e);
+            return false;
+        }
+        retries.succeeded(connection, track);
+        uploaded(connection, List.of(track));
+        return true;
+    }
+
+    /**
+     * Uploads the tracks at once, after a failed track the upload continues with the tracks behind it. Only tracks the
+     * plugin confirmed by returning, or by failing a track behind them, count as uploaded, a failure of the whole
+     * connection stops the sync without counting the tracks of the failed call
+     *
+     * @return tracks which were uploaded
+     */
+    private List<MaterializedTrack> uploadBulk(SyncConnection connection, List<MaterializedTrack> tracks) {
+        List<MaterializedTrack> uploadedTracks = new ArrayList<>(tracks.size());
+        List<MaterializedTrack> remaining = tracks;
+        try {
+            while (!remaining.isEmpty()) {
+                checkLease(connection);
+                try {
+                    connection.getSyncOutputPlugin().uploadTracks(connection, new ArrayList<>(remaining));
+                    uploadedTracks.addAll(remaining);
+                    break;
+                } catch (SyncException e) {
+                    int index = remaining.indexOf(e.getTrack());
+                    if (index < 0) {
+                        throw e;
+                    }
+                    uploadedTracks.addAll(remaining.subList(0, index));
+                    retries.failed(connection, e.getTrack(), "upload", e);
+                    remaining = remaining.subList(index + 1, remaining.size());
+                }
+            }
+        } finally {
+            // tracks confirmed before a failure of the connection are on the target, they are not retried
+            for (MaterializedTrack track : uploadedTracks) {
+                retries.succeeded(connection, track);
+            }
+            uploaded(connection, uploadedTracks);
+        }
+        return uploadedTracks;
+    }
+
+    /**
+     * Stops the sync of a connection whose lease was taken over by another instance, both would change the target
+     */
+    private void checkLease(SyncConnection connection) {
+        if (!leases.isHeld(connection.getName())) {
+            throw new IllegalStateException("Lease of connection " + connection.getName() + " was lost, stopping its sync");
+        }
+    }
+
+    private SyncProgress getProgress(SyncConnection connection) {
+        return running.computeIfAbsent(connection.getName(), SyncProgress::new);
+    }
+
+    private void uploaded(SyncConnection connection, List<MaterializedTrack> tracks) {
+        long bytes = 0;
+        for (MaterializedTrack track : tracks) {
+            bytes += track.getSize();
+        }
+        ConnectionMetrics.of(connection.getName()).uploaded(tracks.size(), bytes);
+    }
+
+    private void removed(SyncConnection connection, int tracks) {
+        ConnectionMetrics.of(connection.getName()).removed(tracks);
+    }
+}
@@ -0,0 +1,99 @@
+package rocks.voss.musicsync.application.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.application.config.SchedulerConfiguration;
+import rocks.voss.musicsync.application.state.ConnectionState;
+import rocks.voss.musicsync.application.state.SyncEstimate;
+import rocks.voss.musicsync.application.state.SyncJournal;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which of the waiting connections gets the next free thread. Connections with a higher priority always go
+ * first. With the order "sjf" the connection with the shortest expected sync goes next among connections of the same
+ * priority, so small connections are fresh soon instead of waiting behind a large one. The expected duration is
+ * smoothed over the previous syncs and kept in the journal, so one-shot runs know it as well.
+ * <p>
+ * Every second a connection waits makes it look shorter by the aging factor, so a large connection is not starved by
+ * small ones which keep coming. Scheduled connections wait since they are due, connections of a one-shot run since
+ * their previous sync, which moves a connection deferred by the budget of the cycle forward in the next run.
+ */
+public class SyncOrder {
+    final private static Logger log = LogManager.getLogger(SyncOrder.class);
+    final private static double SMOOTHING = 0.5;
+
+    private final SchedulerConfiguration config;
+    private final SyncJournal journal;
+    private final Map<String, Optional<SyncEstimate>> estimates = new ConcurrentHashMap<>();
+
+    SyncOrder(SchedulerConfiguration config, SyncJournal journal) {
+        this.config = config;
+        this.journal = journal;
+    }
+
+    /**
+     * @param due milliseconds since the epoch the connection is waiting for a thread since
+     * @return rank of a waiting connection among the waiting connections of the same priority, lower ranks go first
+     */
+    public long getRank(SyncConnection connection, long due) {
+        if (!"sjf".equals(config.getOrder())) {
+            return 0;
+        }
+        SyncEstimate estimate = getEstimate(connection.getName());
+        long duration = estimate != null ? estimate.getDuration() : 0;
+        return duration + (long) (config.getAging() * due);
+    }
+
+    /**
+     * @return milliseconds since the epoch of the end of the previous sync of the connection, 0 if unknown
+     */
+    public long getSynced(SyncConnection connection) {
+        SyncEstimate estimate = getEstimate(connection.getName());
+        return estimate != null ? estimate.getTimestamp() : 0;
+    }
+
+    /**
+     * Updates the expected duration of the connection with the duration of a sync
+     *
+     * @param duration milliseconds the sync took
+     */
+    void completed(String connection, SyncResult result, long duration) {
+        if (result == SyncResult.FAILED || result == SyncResult.SKIPPED) {
+            return;
+        }
+        SyncEstimate previous = getEstimate(connection);
+        long expected = previous != null ? (long) (SMOOTHING * duration + (1 - SMOOTHING) * previous.getDuration()) : duration;
+        // a connection stopped by its deadline keeps waiting for the rest of its tracks
+        long timestamp = result == SyncResult.INCOMPLETE && previous != null ? previous.getTimestamp() : System.currentTimeMillis();
+        SyncEstimate estimate = new SyncEstimate(expected, timestamp);
+        estimates.put(connection, Optional.of(estimate));
+        log.debug("Expected duration of the next sync of connection " + connection + ": " + expected + " ms");
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.estimate(connection, estimate);
+        } catch (IOException e) {
+            log.error("Could not journal expected duration of connection: " + connection, e);
+        }
+    }
+
+    /**
+     * Drops the expected duration of a connection, e.g. because its input or output changed
+     */
+    void forget(String connection) {
+        estimates.remove(connection);
+    }
+
+    private SyncEstimate getEstimate(String connection) {
+        return estimates.computeIfAbsent(connection, key -> {
+            ConnectionState state = journal != null ? journal.getState(key) : null;
+            return Optional.ofNullable(state != null ? state.getEstimate() : null);
+        }).orElse(null);
+    }
+}
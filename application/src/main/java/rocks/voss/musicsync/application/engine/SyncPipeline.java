@@ -0,0 +1,214 @@
+package rocks.voss.musicsync.application.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncException;
+import rocks.voss.musicsync.api.SyncTrack;
+import rocks.voss.musicsync.application.config.PipelineConfiguration;
+import rocks.voss.musicsync.application.metrics.Histogram;
+import rocks.voss.musicsync.application.metrics.MaterializeEvent;
+import rocks.voss.musicsync.application.metrics.Metrics;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Pipelines the tracks of a connection through three stages which run at the same time:
+ * resolving (is the track needed at all), materializing (download/probe the file) and uploading.
+ * The stages are decoupled by bounded queues, so track N+1 gets downloaded while track N is uploaded.
+ * Once the deadline expired no further track gets materialized, the tracks materialized so far are still uploaded.
+ * A track which fails to materialize is handed to the failure callback and skipped, the other tracks continue.
+ */
+public class SyncPipeline {
+    final private static Logger log = LogManager.getLogger(SyncPipeline.class);
+    final private static ExecutorService stages = Executors.newCachedThreadPool(ThreadFactories.daemon("pipeline"));
+    final private static long POLL_MILLIS = 100;
+    final private static Histogram materializing = Metrics.histogram("musicsync_materialize_seconds", "Duration of downloading/probing a track");
+
+    private final PipelineConfiguration config;
+    private final Tuning tuning;
+
+    public SyncPipeline(PipelineConfiguration config, Tuning tuning) {
+        this.config = config;
+        this.tuning = tuning;
+    }
+
+    /**
+     * @param connection which is synced
+     * @param tracks     full list of tracks in order
+     * @param resolve    returns true if the track has to be uploaded
+     * @param upload     receives the materialized tracks in order, runs on the calling thread
+     * @param failed     receives the tracks which could not be materialized, runs on any stage
+     * @param deadline   after which no further track is materialized
+     * @return false if the deadline stopped the run before all tracks were processed
+     */
+    public boolean run(SyncConnection connection, List<SyncTrack> tracks, Predicate<SyncTrack> resolve, Consumer<MaterializedTrack> upload, BiConsumer<SyncTrack, RuntimeException> failed, Deadline deadline) throws InterruptedException {
+        if (!config.isEnabled()) {
+            for (SyncTrack track : tracks) {
+                if (deadline.isExpired()) {
+                    return false;
+                }
+                if (!resolve.test(track)) {
+                    continue;
+                }
+                MaterializedTrack materialized = materialize(connection.getName(), track, failed);
+                if (materialized != null) {
+                    upload.accept(materialized);
+                }
+            }
+            return true;
+        }
+
+        Execution execution = new Execution(tuning.getResolveQueue(), tuning.getMaterializeQueue());
+        Future<?> resolver = stages.submit(() -> execution.resolve(tracks, resolve));
+        Future<?> materializer = stages.submit(() -> execution.materialize(connection.getName(), failed, deadline));
+        try {
+            execution.upload(upload);
+            if (execution.stopped) {
+                // the resolver may still wait for the materializer
+                execution.abort();
+                return false;
+            }
+            resolver.get();
+            materializer.get();
+            return true;
+        } catch (ExecutionException e) {
+            execution.abort();
+            throw new IllegalStateException("Pipeline stage failed", e.getCause());
+        } catch (InterruptedException e) {
+            execution.abort();
+            if (execution.failure != null) {
+                throw new IllegalStateException("Pipeline stage failed", execution.failure);
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            execution.abort();
+            throw e;
+        } finally {
+            resolver.cancel(true);
+            materializer.cancel(true);
+        }
+    }
+
+    /**
+     * @return null if the track could not be materialized
+     */
+    private static MaterializedTrack materialize(String connection, SyncTrack track, BiConsumer<SyncTrack, RuntimeException> failed) {
+        log.debug("Materializing: " + track.getId());
+        MaterializeEvent event = new MaterializeEvent(connection, track.getId());
+        event.begin();
+        long start = System.nanoTime();
+        MaterializedTrack materialized;
+        try {
+            materialized = new MaterializedTrack(track, track.getPath());
+        } catch (SyncException e) {
+            failed.accept(track, e);
+            return null;
+        }
+        materializing.observeSince(start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.setBytes(materialized.getSize());
+            event.commit();
+        }
+        return materialized;
+    }
+
+    private static class Execution {
+        private final BlockingQueue<Optional<SyncTrack>> resolved;
+        private final BlockingQueue<Optional<MaterializedTrack>> materialized;
+        private volatile boolean aborted = false;
+        private volatile boolean stopped = false;
+        private volatile RuntimeException failure;
+
+        Execution(int resolveQueue, int materializeQueue) {
+            this.resolved = new ArrayBlockingQueue<>(resolveQueue);
+            this.materialized = new ArrayBlockingQueue<>(materializeQueue);
+        }
+
+        void resolve(List<SyncTrack> tracks, Predicate<SyncTrack> resolve) {
+            try {
+                for (SyncTrack track : tracks) {
+                    if (resolve.test(track)) {
+                        put(resolved, Optional.of(track));
+                    }
+                }
+                put(resolved, Optional.empty());
+            } catch (InterruptedException e) {
+                abort();
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        void materialize(String connection, BiConsumer<SyncTrack, RuntimeException> failed, Deadline deadline) {
+            try {
+                Optional<SyncTrack> track;
+                while ((track = take(resolved)).isPresent()) {
+                    if (deadline.isExpired()) {
+                        stopped = true;
+                        break;
+                    }
+                    MaterializedTrack materializedTrack = SyncPipeline.materialize(connection, track.get(), failed);
+                    if (materializedTrack != null) {
+                        put(materialized, Optional.of(materializedTrack));
+                    }
+                }
+                put(materialized, Optional.empty());
+            } catch (InterruptedException e) {
+                abort();
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        void upload(Consumer<MaterializedTrack> upload) throws InterruptedException {
+            Optional<MaterializedTrack> track;
+            while ((track = take(materialized)).isPresent()) {
+                upload.accept(track.get());
+            }
+        }
+
+        void abort() {
+            aborted = true;
+        }
+
+        private void fail(RuntimeException e) {
+            if (failure == null) {
+                failure = e;
+            }
+            abort();
+        }
+
+        private <T> void put(BlockingQueue<Optional<T>> queue, Optional<T> track) throws InterruptedException {
+            while (!queue.offer(track, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkAborted();
+            }
+        }
+
+        private <T> Optional<T> take(BlockingQueue<Optional<T>> queue) throws InterruptedException {
+            Optional<T> track;
+            while ((track = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                checkAborted();
+            }
+            return track;
+        }
+
+        private void checkAborted() throws InterruptedException {
+            if (aborted) {
+                throw new InterruptedException("Pipeline aborted");
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package rocks.voss.musicsync.application.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncOutputPlugin;
+import rocks.voss.musicsync.api.SyncPlan;
+import rocks.voss.musicsync.api.SyncTargetTrack;
+import rocks.voss.musicsync.api.SyncTrack;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+/**
+ * Computes the {@link SyncPlan} of a connection by indexing input and target tracks by their key,
+ * so the reconciliation is linear in the number of tracks.
+ */
+public class SyncPlanner {
+    final private static Logger log = LogManager.getLogger(SyncPlanner.class);
+
+    /**
+     * @param verified returns true if the target track is known to be a valid copy of the track already,
+     *                 e.g. from the journal, so the plugin does not need to validate it again
+     */
+    public static SyncPlan plan(SyncConnection connection, List<SyncTrack> tracks, List<SyncTargetTrack> targetTracks, BiPredicate<SyncTrack, SyncTargetTrack> verified) {
+        SyncOutputPlugin outputPlugin = connection.getSyncOutputPlugin();
+
+        Map<String, SyncTargetTrack> targetIndex = new HashMap<>(targetTracks.size() * 2);
+        List<SyncTargetTrack> toRemove = new ArrayList<>();
+        for (SyncTargetTrack targetTrack : targetTracks) {
+            if (targetIndex.putIfAbsent(targetTrack.getKey(), targetTrack) != null) {
+                log.info("Duplicate on target: " + targetTrack.getKey());
+                toRemove.add(targetTrack);
+            }
+        }
+
+        Set<String> keys = new HashSet<>(tracks.size() * 2);
+        Map<SyncTargetTrack, Boolean> kept = new IdentityHashMap<>(targetTracks.size() * 2);
+        List<SyncTrack> toAdd = new ArrayList<>();
+        List<SyncTrack> unchanged = new ArrayList<>();
+        List<String> unchangedKeys = new ArrayList<>();
+        for (SyncTrack track : tracks) {
+            String key = outputPlugin.getTrackKey(track);
+            if (!keys.add(key)) {
+                log.debug("Duplicate in input: " + key);
+                continue;
+            }
+
+            SyncTargetTrack targetTrack = targetIndex.get(key);
+            if (targetTrack == null) {
+                toAdd.add(track);
+            } else if (verified.test(track, targetTrack)) {
+                log.debug("Track verified by journal: " + key);
+                unchanged.add(track);
+                unchangedKeys.add(key);
+                kept.put(targetTrack, Boolean.TRUE);
+            } else if (!outputPlugin.isTargetTrackValid(connection, track, targetTrack)) {
+                log.info("discrepancy between source & target is too high: " + key);
+                toRemove.add(targetTrack);
+                toAdd.add(track);
+            } else if (track.isFresh()) {
+                log.info("Track was updated and needs reupload: " + key);
+                toRemove.add(targetTrack);
+                toAdd.add(track);
+            } else {
+                unchanged.add(track);
+                unchangedKeys.add(key);
+                kept.put(targetTrack, Boolean.TRUE);
+            }
+        }
+
+        for (Map.Entry<String, SyncTargetTrack> entry : targetIndex.entrySet()) {
+            if (!keys.contains(entry.getKey())) {
+                toRemove.add(entry.getValue());
+            }
+        }
+
+        // the order of outputs which can not order their tracks may differ from the input without a track to move
+        boolean reorder = outputPlugin.canOrderTracks() && isReorder(targetTracks, kept, unchangedKeys);
+        SyncPlan plan = new SyncPlan(tracks, toAdd, toRemove, unchanged, reorder);
+        log.info("Plan for connection " + connection.getName() + ": " + plan);
+        return plan;
+    }
+
+    private static boolean isReorder(List<SyncTargetTrack> targetTracks, Map<SyncTargetTrack, Boolean> kept, List<String> unchangedKeys) {
+        int position = 0;
+        for (SyncTargetTrack targetTrack : targetTracks) {
+            if (!kept.containsKey(targetTrack)) {
+                continue;
+            }
+            if (!targetTrack.getKey().equals(unchangedKeys.get(position++))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,33 @@
+package rocks.voss.musicsync.application.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of a connection which is synced at the moment
+ */
+public class SyncProgress {
+    private final String connection;
+    private final long started = System.currentTimeMillis();
+    private final AtomicInteger done = new AtomicInteger();
+    private volatile String stage = "starting";
+    private volatile int total = 0;
+
+    SyncProgress(String connection) {
+        this.connection = connection;
+    }
+
+    void stage(String stage, int total) {
+        this.stage = stage;
+        this.total = total;
+        this.done.set(0);
+    }
+
+    void done() {
+        done.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return connection + " " + stage + " " + done.get() + "/" + total + " " + (System.currentTimeMillis() - started) / 1000 + "s";
+    }
+}
@@ -0,0 +1,27 @@
+package rocks.voss.musicsync.application.engine;
+
+/**
+ * Outcome of syncing a connection once, used to adapt the interval of the connection
+ */
+public enum SyncResult {
+    /**
+     * tracks were added, removed or reordered on the target
+     */
+    CHANGED,
+    /**
+     * target was in sync already
+     */
+    UNCHANGED,
+    /**
+     * sync was stopped by its deadline and resumes with the next run
+     */
+    INCOMPLETE,
+    /**
+     * connection could not be synced
+     */
+    FAILED,
+    /**
+     * connection is synced by another instance of the cluster
+     */
+    SKIPPED
+}
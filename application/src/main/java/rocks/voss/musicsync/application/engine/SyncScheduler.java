@@ -0,0 +1,274 @@
+package rocks.voss.musicsync.application.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncInputPlugin;
+import rocks.voss.musicsync.application.config.GeneralConfiguration;
+import rocks.voss.musicsync.application.config.SchedulerConfiguration;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Schedules every connection on its own interval instead of syncing all connections in fixed cycles.
+ * The connections are kept in a queue ordered by the time they are due next. The interval of a connection shrinks
+ * while it keeps changing and grows while it is unchanged, failing connections are retried with exponential backoff.
+ * All delays get some jitter, so connections do not hit the same remote service at once. A connection stopped by its
+ * budget continues after the minimal interval. A connection synced by another instance of the cluster is checked again
+ * on the heartbeat interval of the cluster, so it is taken over soon after its lease expires.
+ * <p>
+ * Connections whose input plugin watches the input for changes are synced when triggered by the plugin and only
+ * rescanned on the watch interval as a safety net.
+ */
+public class SyncScheduler {
+    final private static Logger log = LogManager.getLogger(SyncScheduler.class);
+    final private static double GROWTH = 1.5;
+    final private static double SHRINK = 0.5;
+    final private static int MAX_BACKOFF_EXPONENT = 16;
+
+    private final GeneralConfiguration config;
+    private final ConnectionExecutor executor;
+    private final Function<SyncConnection, SyncResult> task;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.<Entry>comparingLong(entry -> entry.due)
+            .thenComparingInt(entry -> -entry.connection.getPriority()));
+
+    public SyncScheduler(GeneralConfiguration config, ConnectionExecutor executor, Function<SyncConnection, SyncResult> task) {
+        this.config = config;
+        this.executor = executor;
+        this.task = task;
+    }
+
+    /**
+     * Syncs the connections until the thread gets interrupted, all connections are due right away
+     */
+    public void run(List<SyncConnection> connections) throws InterruptedException {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (SyncConnection connection : connections) {
+                Entry entry = new Entry(connection, getInitialInterval());
+                entry.due = now;
+                entries.put(connection.getName(), entry);
+                queue.add(entry);
+            }
+        }
+        for (SyncConnection connection : connections) {
+            watch(connection);
+        }
+
+        while (true) {
+            Entry entry = takeDue();
+            executor.submit(entry.connection, entry.due, task, result -> completed(entry, result));
+        }
+    }
+
+    /**
+     * Schedules a connection which was added to the configuration, it is due right away
+     */
+    public void add(SyncConnection connection) {
+        synchronized (this) {
+            Entry entry = new Entry(connection, getInitialInterval());
+            entry.due = System.currentTimeMillis();
+            entries.put(connection.getName(), entry);
+            queue.add(entry);
+            notifyAll();
+        }
+        watch(connection);
+    }
+
+    /**
+     * Replaces a connection whose configuration changed by its new version. A running sync finishes with the old
+     * version, afterwards the new version is synced right away.
+     */
+    public void replace(SyncConnection connection) {
+        SyncConnection previous;
+        synchronized (this) {
+            Entry entry = entries.get(connection.getName());
+            if (entry == null) {
+                previous = null;
+            } else {
+                previous = entry.connection;
+                // the queue orders by the priority of the connection, so the entry is only changed outside of it
+                queue.remove(entry);
+                entry.connection = connection;
+                entry.interval = getInitialInterval();
+                entry.failures = 0;
+                entry.watched = false;
+                if (entry.running) {
+                    entry.requested = true;
+                } else {
+                    entry.due = System.currentTimeMillis();
+                    queue.add(entry);
+                    notifyAll();
+                }
+            }
+        }
+        if (previous == null) {
+            add(connection);
+            return;
+        }
+        unwatch(previous);
+        watch(connection);
+    }
+
+    /**
+     * Stops scheduling a connection which was removed from the configuration, a running sync is finished
+     */
+    public void remove(String name) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.remove(name);
+            if (entry == null) {
+                return;
+            }
+            entry.removed = true;
+            queue.remove(entry);
+        }
+        unwatch(entry.connection);
+    }
+
+    /**
+     * Makes the connection due right away, if it is running at the moment it is synced again once it is done
+     *
+     * @return false if there is no connection with this name
+     */
+    public synchronized boolean requestSync(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.running) {
+            entry.requested = true;
+        } else {
+            queue.remove(entry);
+            entry.due = System.currentTimeMillis();
+            queue.add(entry);
+            notifyAll();
+        }
+        return true;
+    }
+
+    private void watch(SyncConnection connection) {
+        SyncInputPlugin inputPlugin = connection.getSyncInputPlugin();
+        if (inputPlugin == null || !inputPlugin.watch(connection, changed -> requestSync(changed.getName()))) {
+            return;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(connection.getName());
+            if (entry == null || entry.connection != connection) {
+                // removed or replaced in the meantime
+                inputPlugin.unwatch(connection);
+                return;
+            }
+            entry.watched = true;
+            entry.interval = Math.max(1, config.getScheduler().getWatchInterval());
+        }
+    }
+
+    private void unwatch(SyncConnection connection) {
+        SyncInputPlugin inputPlugin = connection.getSyncInputPlugin();
+        if (inputPlugin != null) {
+            inputPlugin.unwatch(connection);
+        }
+    }
+
+    private synchronized Entry takeDue() throws InterruptedException {
+        while (true) {
+            Entry head = queue.peek();
+            if (head == null) {
+                wait();
+                continue;
+            }
+            long delay = head.due - System.currentTimeMillis();
+            if (delay <= 0) {
+                queue.poll();
+                head.running = true;
+                return head;
+            }
+            wait(delay);
+        }
+    }
+
+    private synchronized void completed(Entry entry, SyncResult result) {
+        entry.running = false;
+        if (entry.removed) {
+            log.info("Connection " + entry.connection.getName() + " was removed, not scheduling it again");
+            return;
+        }
+        long delay = getDelay(entry, result);
+        if (entry.requested) {
+            entry.requested = false;
+            delay = 0;
+        }
+        entry.due = System.currentTimeMillis() + delay;
+        queue.add(entry);
+        if (result == SyncResult.SKIPPED) {
+            log.debug("Checking lease of connection " + entry.connection.getName() + " again in " + delay / 1000 + " seconds");
+        } else {
+            log.info("Next sync of connection " + entry.connection.getName() + " in " + delay / 1000 + " seconds");
+        }
+        notifyAll();
+    }
+
+    private long getDelay(Entry entry, SyncResult result) {
+        SchedulerConfiguration scheduler = config.getScheduler();
+        if (result == SyncResult.SKIPPED) {
+            // keep the interval, the lease holder might stop and this instance takes over
+            return withJitter(Math.max(1, config.getCluster().getHeartbeat()));
+        }
+        if (result == SyncResult.FAILED) {
+            entry.failures++;
+            long backoff = Math.max(1, scheduler.getMinInterval()) * (1L << Math.min(entry.failures - 1, MAX_BACKOFF_EXPONENT));
+            return withJitter(Math.min(backoff, Math.max(1, scheduler.getMaxBackoff())));
+        }
+
+        entry.failures = 0;
+        if (result == SyncResult.INCOMPLETE) {
+            // continue soon, other due connections still go first
+            return withJitter(scheduler.getMinInterval());
+        }
+        if (scheduler.isAdaptive() && !entry.watched) {
+            double interval = result == SyncResult.CHANGED ? entry.interval * SHRINK : entry.interval * GROWTH;
+            entry.interval = clamp(interval);
+        }
+        return withJitter(entry.interval);
+    }
+
+    private double getInitialInterval() {
+        // without the adaptive scheduler the interval stays the configured one
+        return config.getScheduler().isAdaptive() ? clamp(config.getTimeout()) : config.getTimeout();
+    }
+
+    private double clamp(double interval) {
+        SchedulerConfiguration scheduler = config.getScheduler();
+        return Math.max(scheduler.getMinInterval(), Math.min(scheduler.getMaxInterval(), interval));
+    }
+
+    private long withJitter(double seconds) {
+        double jitter = config.getScheduler().getJitter();
+        double factor = jitter > 0 ? 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter) : 1;
+        return (long) (seconds * factor * 1000);
+    }
+
+    private static class Entry {
+        private SyncConnection connection;
+        private double interval;
+        private long due;
+        private int failures = 0;
+        private boolean running = false;
+        private boolean requested = false;
+        private boolean watched = false;
+        private boolean removed = false;
+
+        Entry(SyncConnection connection, double interval) {
+            this.connection = connection;
+            this.interval = interval;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package rocks.voss.musicsync.application.engine;
+
+/**
+ * Token bucket holding up to one second of bytes. Callers reserve their bytes in the order they ask and sleep until
+ * the reservation is covered, so concurrent callers asking in chunks get the same share of the rate.
+ */
+class TokenBucket {
+    final private static long NANOS = 1_000_000_000L;
+
+    private final long rate;
+    // point in time at which all reserved bytes are paid
+    private long paid = System.nanoTime() - NANOS;
+
+    TokenBucket(long rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * @return nanoseconds slept
+     */
+    long acquire(long bytes) throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // an idle bucket is full, it never holds more than one second of bytes
+            paid = Math.max(paid, now - NANOS) + (long) (bytes * (double) NANOS / rate);
+            wait = paid - now;
+        }
+        if (wait <= 0) {
+            return 0;
+        }
+        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        return wait;
+    }
+}
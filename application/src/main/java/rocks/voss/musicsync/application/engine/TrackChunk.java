@@ -0,0 +1,49 @@
+package rocks.voss.musicsync.application.engine;
+
+import rocks.voss.musicsync.application.config.ChunkConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Collects the materialized tracks of a bulk sync and hands them over for upload once the chunk is full, so the
+ * tracks are uploaded and committed in chunks while the next ones are downloaded instead of all at the end.
+ * A chunk is full with the configured number of tracks or bytes, a limit of 0 is unlimited.
+ */
+class TrackChunk {
+    private final ChunkConfiguration config;
+    private final Consumer<List<MaterializedTrack>> upload;
+    private List<MaterializedTrack> tracks = new ArrayList<>();
+    private long bytes = 0;
+
+    TrackChunk(ChunkConfiguration config, Consumer<List<MaterializedTrack>> upload) {
+        this.config = config;
+        this.upload = upload;
+    }
+
+    void add(MaterializedTrack track) {
+        tracks.add(track);
+        bytes += track.getSize();
+        if (config.getTracks() > 0 && tracks.size() >= config.getTracks() || config.getBytes() > 0 && bytes >= config.getBytes()) {
+            flush();
+        }
+    }
+
+    int size() {
+        return tracks.size();
+    }
+
+    /**
+     * Uploads the tracks collected so far
+     */
+    void flush() {
+        if (tracks.isEmpty()) {
+            return;
+        }
+        List<MaterializedTrack> chunk = tracks;
+        tracks = new ArrayList<>();
+        bytes = 0;
+        upload.accept(chunk);
+    }
+}
@@ -0,0 +1,148 @@
+package rocks.voss.musicsync.application.engine;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.application.config.GeneralConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sizes the worker pool & pipeline queues which are configured as 0 (auto) from the resources the application may
+ * use at startup: the CPU quota and memory limit of its cgroup, so it fits into the limits of a container, the heap of
+ * the JVM and the free disk space for downloaded tracks waiting for their upload. Configured values always win.
+ */
+public class Tuning {
+    final private static Logger log = LogManager.getLogger(Tuning.class);
+    final private static long MB = 1024 * 1024;
+    // memory a concurrently synced connection may take, on the heap and for its external processes
+    final private static long CONNECTION_MEMORY = 64 * MB;
+    // disk space reserved per downloaded track waiting for its upload
+    final private static long TRACK_DISK = 512 * MB;
+    final private static int MAX_THREADS = 8;
+    final private static int MAX_MATERIALIZE_QUEUE = 8;
+    final private static int RESOLVE_QUEUE_FACTOR = 8;
+    // cgroup v1 reports an unlimited memory limit as a huge number
+    final private static long UNLIMITED = 1L << 60;
+
+    private final int threads;
+    private final int resolveQueue;
+    private final int materializeQueue;
+
+    Tuning(int threads, int resolveQueue, int materializeQueue) {
+        this.threads = threads;
+        this.resolveQueue = resolveQueue;
+        this.materializeQueue = materializeQueue;
+    }
+
+    public static Tuning detect(GeneralConfiguration config) {
+        int cpus = getCpus();
+        long memoryLimit = getMemoryLimit();
+        long heap = Runtime.getRuntime().maxMemory();
+        long disk = getFreeDisk(config);
+        log.info("Resources: " + cpus + " CPUs, memory limit " + (memoryLimit > 0 ? memoryLimit / MB + " MB" : "none")
+                + ", heap " + heap / MB + " MB, free disk " + disk / MB + " MB");
+
+        long connections = Math.min(cpus, heap / CONNECTION_MEMORY);
+        if (memoryLimit > 0) {
+            // external processes like ffprobe & stream_recorder.pl live outside of the heap
+            connections = Math.min(connections, Math.max(0, memoryLimit - heap) / CONNECTION_MEMORY);
+        }
+        int threads = choose("threads", config.getThreads(), clamp(connections, MAX_THREADS),
+                "by CPUs, heap & memory limit");
+        int materializeQueue = choose("pipeline.materializeQueue", config.getPipeline().getMaterializeQueue(),
+                clamp(Math.min(cpus + 1, disk / TRACK_DISK), MAX_MATERIALIZE_QUEUE), "by CPUs & free disk");
+        int resolveQueue = choose("pipeline.resolveQueue", config.getPipeline().getResolveQueue(),
+                RESOLVE_QUEUE_FACTOR * materializeQueue, "by materialize queue");
+        return new Tuning(threads, resolveQueue, materializeQueue);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getResolveQueue() {
+        return resolveQueue;
+    }
+
+    public int getMaterializeQueue() {
+        return materializeQueue;
+    }
+
+    private static int choose(String name, int configured, int auto, String reason) {
+        if (configured > 0) {
+            log.info("Tuning " + name + ": " + configured + " (configured, auto would be " + auto + ")");
+            return configured;
+        }
+        log.info("Tuning " + name + ": " + auto + " (auto " + reason + ")");
+        return auto;
+    }
+
+    private static int clamp(long value, int max) {
+        return (int) Math.max(1, Math.min(value, max));
+    }
+
+    private static int getCpus() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        double quota = getCpuQuota();
+        if (quota > 0) {
+            cpus = Math.min(cpus, (int) Math.ceil(quota));
+        }
+        return Math.max(1, cpus);
+    }
+
+    /**
+     * @return CPUs the cgroup may use, -1 if not limited
+     */
+    private static double getCpuQuota() {
+        // cgroup v2: "<quota> <period>" or "max <period>"
+        String[] max = read("/sys/fs/cgroup/cpu.max");
+        if (max != null && max.length == 2 && !"max".equals(max[0])) {
+            return Double.parseDouble(max[0]) / Double.parseDouble(max[1]);
+        }
+        String[] quota = read("/sys/fs/cgroup/cpu/cpu.cfs_quota_us");
+        String[] period = read("/sys/fs/cgroup/cpu/cpu.cfs_period_us");
+        if (quota != null && period != null && Double.parseDouble(quota[0]) > 0) {
+            return Double.parseDouble(quota[0]) / Double.parseDouble(period[0]);
+        }
+        return -1;
+    }
+
+    /**
+     * @return bytes the cgroup may use, -1 if not limited
+     */
+    private static long getMemoryLimit() {
+        String[] max = read("/sys/fs/cgroup/memory.max");
+        if (max != null && !"max".equals(max[0])) {
+            return Long.parseLong(max[0]);
+        }
+        String[] limit = read("/sys/fs/cgroup/memory/memory.limit_in_bytes");
+        if (limit != null && Long.parseLong(limit[0]) < UNLIMITED) {
+            return Long.parseLong(limit[0]);
+        }
+        return -1;
+    }
+
+    private static long getFreeDisk(GeneralConfiguration config) {
+        // the journal & the download caches usually share the working directory
+        String journal = config.getJournal().getFile();
+        File file = new File(StringUtils.isBlank(journal) ? "." : journal).getAbsoluteFile();
+        return file.getParentFile() != null ? file.getParentFile().getUsableSpace() : file.getUsableSpace();
+    }
+
+    private static String[] read(String file) {
+        try {
+            Path path = Path.of(file);
+            if (!Files.isReadable(path)) {
+                return null;
+            }
+            return Files.readString(path).trim().split("\\s+");
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not read " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
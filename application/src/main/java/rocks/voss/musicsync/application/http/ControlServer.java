@@ -0,0 +1,104 @@
+package rocks.voss.musicsync.application.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.application.config.HttpConfiguration;
+import rocks.voss.musicsync.application.engine.SyncEngine;
+import rocks.voss.musicsync.application.engine.SyncProgress;
+import rocks.voss.musicsync.application.engine.SyncScheduler;
+import rocks.voss.musicsync.application.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Embedded HTTP endpoint of the daemon:
+ * <ul>
+ * <li>GET /metrics - metrics in the Prometheus text format</li>
+ * <li>GET /progress - connections which are synced at the moment</li>
+ * <li>POST /sync/{connection} - sync the connection right away</li>
+ * </ul>
+ */
+public class ControlServer {
+    final private static Logger log = LogManager.getLogger(ControlServer.class);
+    final private static String SYNC = "/sync/";
+
+    private final HttpServer server;
+    private final SyncEngine engine;
+    private final SyncScheduler scheduler;
+
+    public ControlServer(HttpConfiguration config, SyncEngine engine, SyncScheduler scheduler) throws IOException {
+        this.engine = engine;
+        this.scheduler = scheduler;
+        this.server = HttpServer.create(new InetSocketAddress(config.getBind(), config.getPort()), 0);
+        server.createContext("/metrics", exchange -> handle(exchange, "GET", this::metrics));
+        server.createContext("/progress", exchange -> handle(exchange, "GET", this::progress));
+        server.createContext(SYNC, exchange -> handle(exchange, "POST", this::sync));
+    }
+
+    public void start() {
+        server.start();
+        log.info("Listening on " + server.getAddress());
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        StringBuilder out = new StringBuilder();
+        Metrics.write(out);
+        respond(exchange, 200, "text/plain; version=0.0.4", out.toString());
+    }
+
+    private void progress(HttpExchange exchange) throws IOException {
+        StringBuilder out = new StringBuilder();
+        for (SyncProgress progress : engine.getProgress()) {
+            out.append(progress).append('\n');
+        }
+        respond(exchange, 200, "text/plain", out.toString());
+    }
+
+    private void sync(HttpExchange exchange) throws IOException {
+        String name = URLDecoder.decode(exchange.getRequestURI().getRawPath().substring(SYNC.length()), StandardCharsets.UTF_8);
+        if (scheduler.requestSync(name)) {
+            log.info("Sync requested for connection: " + name);
+            respond(exchange, 202, "text/plain", "Sync requested\n");
+        } else {
+            respond(exchange, 404, "text/plain", "Unknown connection: " + name + "\n");
+        }
+    }
+
+    private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+        try {
+            if (!method.equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "text/plain", "Method not allowed\n");
+                return;
+            }
+            handler.handle(exchange);
+        } catch (RuntimeException e) {
+            log.error("Exception", e);
+            respond(exchange, 500, "text/plain", "Internal error\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+}
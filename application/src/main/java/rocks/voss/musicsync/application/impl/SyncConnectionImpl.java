@@ -1,32 +1,92 @@
 package rocks.voss.musicsync.application.impl;
 
 import lombok.Getter;
-import lombok.Setter;
+import rocks.voss.jsonhelper.JSONHelper;
 import rocks.voss.musicsync.api.SyncConnection;
 import rocks.voss.musicsync.api.SyncInputPlugin;
 import rocks.voss.musicsync.api.SyncOutputPlugin;
+import rocks.voss.musicsync.api.SyncPlugin;
+import rocks.voss.musicsync.api.SyncThrottle;
 import rocks.voss.musicsync.application.PluginLoader;
 import rocks.voss.musicsync.application.config.ConnectionEndpoint;
+import rocks.voss.musicsync.application.config.SyncConfiguration;
+import rocks.voss.musicsync.application.engine.BandwidthLimiter;
 
+import java.util.function.Function;
+
+/**
+ * Connection as it is configured. A connection never changes once it is bound, a changed configuration is bound into
+ * a new connection which replaces it, so a running sync keeps the configuration it started with.
+ */
 @Getter
 public class SyncConnectionImpl implements SyncConnection {
-    private SyncInputPlugin syncInputPlugin = null;
-    private SyncOutputPlugin syncOutputPlugin = null;
-
-    @Setter
-    private ConnectionEndpoint in;
-    @Setter
-    private ConnectionEndpoint out;
-    @Setter
-    private String name;
-
-    public static SyncConnection createBy(String name, ConnectionEndpoint in, ConnectionEndpoint out) {
-        SyncConnectionImpl connection = new SyncConnectionImpl();
-        connection.setIn(in);
-        connection.setOut(out);
-        connection.setName(name);
-
-        return connection;
+    private final String name;
+    private final int priority;
+    private final ConnectionEndpoint in;
+    private final ConnectionEndpoint out;
+    private final SyncInputPlugin syncInputPlugin;
+    private final SyncOutputPlugin syncOutputPlugin;
+    private final Object inputConfigBean;
+    private final Object outputConfigBean;
+
+    private SyncConnectionImpl(SyncConfiguration config, Function<String, SyncInputPlugin> inputPlugins, Function<String, SyncOutputPlugin> outputPlugins) {
+        this.name = config.getName();
+        this.priority = config.getPriority();
+        this.in = copy(config.getIn(), "input");
+        this.out = copy(config.getOut(), "output");
+        this.syncInputPlugin = inputPlugins.apply(getInputSchema());
+        this.syncOutputPlugin = outputPlugins.apply(getOutputSchema());
+        this.inputConfigBean = bind(syncInputPlugin, in);
+        this.outputConfigBean = bind(syncOutputPlugin, out);
+    }
+
+    /**
+     * Binds the configurations of the connection to new instances of the configuration classes of its plugins &
+     * validates them
+     *
+     * @throws IllegalArgumentException if input or output is missing, a plugin is unknown or a configuration is invalid
+     */
+    public static SyncConnectionImpl bind(SyncConfiguration config) {
+        return new SyncConnectionImpl(config, PluginLoader::getInputPlugin, PluginLoader::getOutputPlugin);
+    }
+
+    /**
+     * Binds the configurations of the connection to the plugins of a configuration which is not applied yet
+     *
+     * @throws IllegalArgumentException if input or output is missing, a plugin is unknown or a configuration is invalid
+     */
+    public static SyncConnectionImpl bind(SyncConfiguration config, PluginLoader.Staging plugins) {
+        return new SyncConnectionImpl(config, plugins::getInputPlugin, plugins::getOutputPlugin);
+    }
+
+    private ConnectionEndpoint copy(ConnectionEndpoint endpoint, String direction) {
+        // the plugins are looked up by their name, which must not be null either
+        if (endpoint == null || endpoint.getPlugin() == null) {
+            throw new IllegalArgumentException("Connection " + name + " has no " + direction);
+        }
+        ConnectionEndpoint copy = new ConnectionEndpoint();
+        copy.setPlugin(endpoint.getPlugin());
+        copy.setConfig(endpoint.getConfig());
+        return copy;
+    }
+
+    private Object bind(SyncPlugin plugin, ConnectionEndpoint endpoint) {
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin " + endpoint.getPlugin() + " of connection " + name + " is not available");
+        }
+        Class<?> type = plugin.getConnectionConfigurationClass();
+        if (type == null) {
+            return null;
+        }
+        try {
+            Object config = endpoint.getConfig() != null
+                    ? JSONHelper.createBean(type, endpoint.getConfig())
+                    : type.getDeclaredConstructor().newInstance();
+            plugin.validateConnectionConfiguration(config);
+            return config;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid configuration of plugin " + endpoint.getPlugin() + " in connection " + name + ": " + e.getMessage(), e);
+        }
     }
 
     @Override
@@ -39,23 +99,14 @@ public class SyncConnectionImpl implements SyncConnection {
         return out.getPlugin();
     }
 
-    public SyncInputPlugin getSyncInputPlugin() {
-        if (this.syncInputPlugin == null) {
-            this.syncInputPlugin = PluginLoader.getInputPlugins().get(getInputSchema());
-        }
-        return this.syncInputPlugin;
-    }
-
     @Override
     public Object getInputConfig() {
         return in.getConfig();
     }
 
-    public SyncOutputPlugin getSyncOutputPlugin() {
-        if (this.syncOutputPlugin == null) {
-            this.syncOutputPlugin = PluginLoader.getOutputPlugins().get(getOutputSchema());
-        }
-        return this.syncOutputPlugin;
+    @Override
+    public <T> T getInputConfig(Class<T> type) {
+        return type.cast(inputConfigBean);
     }
 
     @Override
@@ -63,6 +114,16 @@ public class SyncConnectionImpl implements SyncConnection {
         return out.getConfig();
     }
 
+    @Override
+    public <T> T getOutputConfig(Class<T> type) {
+        return type.cast(outputConfigBean);
+    }
+
+    @Override
+    public SyncThrottle getThrottle() {
+        return BandwidthLimiter.getThrottle(getOutputSchema());
+    }
+
     @Override
     public String getName() {
         return this.name;
@@ -0,0 +1,18 @@
+package rocks.voss.musicsync.application.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Current value which can go up and down
+ */
+public class Gauge {
+    private final AtomicLong value = new AtomicLong();
+
+    public void set(long value) {
+        this.value.set(value);
+    }
+
+    public long get() {
+        return value.get();
+    }
+}
@@ -0,0 +1,37 @@
+package rocks.voss.musicsync.application.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations with fixed buckets
+ */
+public class Histogram {
+    final static double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300, 900};
+
+    // one more for +Inf
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS.length + 1);
+    private final LongAdder sumNanos = new LongAdder();
+
+    public void observeNanos(long nanos) {
+        double seconds = nanos / 1e9;
+        int bucket = 0;
+        while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        sumNanos.add(nanos);
+    }
+
+    public void observeSince(long startNanos) {
+        observeNanos(System.nanoTime() - startNanos);
+    }
+
+    long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    double getSum() {
+        return sumNanos.sum() / 1e9;
+    }
+}
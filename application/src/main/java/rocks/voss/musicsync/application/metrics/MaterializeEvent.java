@@ -0,0 +1,32 @@
+package rocks.voss.musicsync.application.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("rocks.voss.musicsync.Materialize")
+@Label("Materialize Track")
+@Category("MusicSync")
+@Description("Download/probe of a track before it gets uploaded")
+public class MaterializeEvent extends jdk.jfr.Event {
+    @Label("Connection")
+    String connection;
+
+    @Label("Track Id")
+    String trackId;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    public MaterializeEvent(String connection, String trackId) {
+        this.connection = connection;
+        this.trackId = trackId;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+}
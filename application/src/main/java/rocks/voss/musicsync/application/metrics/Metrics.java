@@ -0,0 +1,105 @@
+package rocks.voss.musicsync.application.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Registry of all metrics of the application, written in the Prometheus text format.
+ * Looking up a metric builds its label string, so callers on a hot path should keep the returned metric.
+ */
+public class Metrics {
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param labels alternating label names and values
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) getFamily(name, help, "counter").metrics.computeIfAbsent(toLabels(labels), key -> new Counter());
+    }
+
+    /**
+     * @param labels alternating label names and values
+     */
+    public static Gauge gauge(String name, String help, String... labels) {
+        return (Gauge) getFamily(name, help, "gauge").metrics.computeIfAbsent(toLabels(labels), key -> new Gauge());
+    }
+
+    /**
+     * @param labels alternating label names and values
+     */
+    public static Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) getFamily(name, help, "histogram").metrics.computeIfAbsent(toLabels(labels), key -> new Histogram());
+    }
+
+    public static void write(StringBuilder out) {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> metric : new TreeMap<>(family.metrics).entrySet()) {
+                if (metric.getValue() instanceof Counter) {
+                    out.append(name).append(metric.getKey()).append(' ').append(((Counter) metric.getValue()).get()).append('\n');
+                } else if (metric.getValue() instanceof Gauge) {
+                    out.append(name).append(metric.getKey()).append(' ').append(((Gauge) metric.getValue()).get()).append('\n');
+                } else {
+                    writeHistogram(out, name, metric.getKey(), (Histogram) metric.getValue());
+                }
+            }
+        }
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+        long cumulative = 0;
+        for (int i = 0; i <= Histogram.BUCKETS.length; i++) {
+            cumulative += histogram.getCount(i);
+            String le = i < Histogram.BUCKETS.length ? String.valueOf(Histogram.BUCKETS[i]) : "+Inf";
+            out.append(name).append("_bucket").append(prefix).append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+        }
+        out.append(name).append("_sum").append(labels).append(' ').append(histogram.getSum()).append('\n');
+        out.append(name).append("_count").append(labels).append(' ').append(cumulative).append('\n');
+    }
+
+    private static Family getFamily(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        }
+        return family;
+    }
+
+    private static String toLabels(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static class Family {
+        private final String help;
+        private final String type;
+        private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
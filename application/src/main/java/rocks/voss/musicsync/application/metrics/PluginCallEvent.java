@@ -0,0 +1,35 @@
+package rocks.voss.musicsync.application.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("rocks.voss.musicsync.PluginCall")
+@Label("Plugin Call")
+@Category("MusicSync")
+@Description("Call of the application into a plugin")
+class PluginCallEvent extends jdk.jfr.Event {
+    @Label("Connection")
+    String connection;
+
+    @Label("Plugin")
+    String plugin;
+
+    @Label("Method")
+    String method;
+
+    @Label("Track Id")
+    String trackId;
+
+    @Label("Tracks")
+    int tracks;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Failed")
+    boolean failed;
+}
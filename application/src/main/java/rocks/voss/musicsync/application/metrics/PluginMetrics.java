@@ -0,0 +1,125 @@
+package rocks.voss.musicsync.application.metrics;
+
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncPlugin;
+import rocks.voss.musicsync.api.SyncTrack;
+import rocks.voss.musicsync.application.engine.MaterializedTrack;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wraps a plugin to record the latency and errors of every call the application makes into it, as metrics and as
+ * {@link PluginCallEvent}. Only calls working on a connection and establishing/closing the endpoint connection are
+ * recorded.
+ */
+public class PluginMetrics implements InvocationHandler {
+    private final SyncPlugin plugin;
+    private final String schema;
+    private final Map<Method, Histogram> latencies = new ConcurrentHashMap<>();
+    private final Map<Method, Counter> errors = new ConcurrentHashMap<>();
+
+    private PluginMetrics(SyncPlugin plugin) {
+        this.plugin = plugin;
+        this.schema = plugin.getSchema();
+    }
+
+    public static <T extends SyncPlugin> T instrument(T plugin, Class<T> type) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new PluginMetrics(plugin));
+        return type.cast(proxy);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return callObject(proxy, method, args);
+        }
+        if (!isRecorded(method)) {
+            return call(method, args);
+        }
+        PluginCallEvent event = new PluginCallEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            return call(method, args);
+        } catch (Throwable e) {
+            event.failed = true;
+            errors.computeIfAbsent(method, key -> Metrics.counter("musicsync_plugin_errors_total",
+                    "Failed calls into plugins", "plugin", schema, "method", key.getName())).inc();
+            throw e;
+        } finally {
+            latencies.computeIfAbsent(method, key -> Metrics.histogram("musicsync_plugin_call_seconds",
+                    "Latency of calls into plugins", "plugin", schema, "method", key.getName())).observeSince(start);
+            event.end();
+            if (event.shouldCommit()) {
+                describe(event, method, args);
+                event.commit();
+            }
+        }
+    }
+
+    private void describe(PluginCallEvent event, Method method, Object[] args) {
+        event.plugin = schema;
+        event.method = method.getName();
+        if (args == null) {
+            return;
+        }
+        for (Object arg : args) {
+            if (arg instanceof SyncConnection) {
+                event.connection = ((SyncConnection) arg).getName();
+            } else if (arg instanceof SyncTrack) {
+                SyncTrack track = (SyncTrack) arg;
+                event.trackId = track.getId();
+                event.tracks = 1;
+                event.bytes = getSize(track);
+            } else if (arg instanceof Collection) {
+                for (Object element : (Collection<?>) arg) {
+                    if (element instanceof SyncTrack) {
+                        event.tracks++;
+                        event.bytes += getSize((SyncTrack) element);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return bytes of a materialized track, other tracks are not asked for their path, it could download them
+     */
+    private static long getSize(SyncTrack track) {
+        return track instanceof MaterializedTrack ? ((MaterializedTrack) track).getSize() : 0;
+    }
+
+    private Object callObject(Object proxy, Method method, Object[] args) throws Throwable {
+        // the proxy keeps its own identity, it is used to share the endpoint sessions of the plugin
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return call(method, args);
+        }
+    }
+
+    private Object call(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(plugin, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static boolean isRecorded(Method method) {
+        if (method.getName().equals("establishConnection") || method.getName().equals("closeConnection")) {
+            return true;
+        }
+        Class<?>[] parameters = method.getParameterTypes();
+        return parameters.length > 0 && parameters[0] == SyncConnection.class;
+    }
+}
@@ -0,0 +1,34 @@
+package rocks.voss.musicsync.application.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("rocks.voss.musicsync.Sync")
+@Label("Sync Connection")
+@Category("MusicSync")
+@Description("Sync of a connection")
+public class SyncEvent extends jdk.jfr.Event {
+    @Label("Connection")
+    String connection;
+
+    @Label("Input Plugin")
+    String input;
+
+    @Label("Output Plugin")
+    String output;
+
+    @Label("Result")
+    String result;
+
+    public SyncEvent(String connection, String input, String output) {
+        this.connection = connection;
+        this.input = input;
+        this.output = output;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+}
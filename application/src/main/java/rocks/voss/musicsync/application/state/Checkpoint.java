@@ -0,0 +1,22 @@
+package rocks.voss.musicsync.application.state;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress of a sync which was stopped by its deadline. The clean up of the target was applied already, the pending
+ * tracks still have to be uploaded and the tracks ordered.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Checkpoint {
+    private String fingerprint;
+    private boolean planned;
+    private long timestamp;
+    private List<String> pending = new ArrayList<>();
+}
@@ -0,0 +1,16 @@
+package rocks.voss.musicsync.application.state;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+public class ConnectionState {
+    private String fingerprint;
+    private long timestamp;
+    private Map<String, TrackState> tracks = new HashMap<>();
+    private Checkpoint checkpoint;
+    private Map<String, RetryState> retries = new HashMap<>();
+    private SyncEstimate estimate;
+}
@@ -0,0 +1,19 @@
+package rocks.voss.musicsync.application.state;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Failed operation of a track which is deferred until its next attempt
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RetryState {
+    private String id;
+    private String operation;
+    private String error;
+    private int attempts;
+    private long nextAttempt;
+}
@@ -0,0 +1,16 @@
+package rocks.voss.musicsync.application.state;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Expected duration of the next sync of a connection, smoothed over its previous syncs
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncEstimate {
+    private long duration;
+    private long timestamp;
+}
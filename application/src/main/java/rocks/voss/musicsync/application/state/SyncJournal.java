@@ -0,0 +1,399 @@
+package rocks.voss.musicsync.application.state;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only journal of the sync state of all connections. Every change is appended as a single line and synced to
+ * disk, a line which was not written completely is dropped on load. Once the journal holds more superseded records
+ * than the compaction threshold, it gets rewritten with the live state only and atomically replaces the old file.
+ * <p>
+ * Records are tab separated:
+ * <ul>
+ * <li>C connection fingerprint timestamp - connection was synced, drops the checkpoint</li>
+ * <li>T connection key id path size lastModified trackDuration targetDuration - state of a track</li>
+ * <li>D connection key - track was removed</li>
+ * <li>X connection - state of connection was dropped</li>
+ * <li>P connection fingerprint planned timestamp id... - sync was stopped by its deadline, ids of the pending tracks</li>
+ * <li>R connection - checkpoint was dropped</li>
+ * <li>F connection id operation error attempts nextAttempt - operation of a track failed, it is deferred</li>
+ * <li>S connection id - deferred track succeeded</li>
+ * <li>E connection duration timestamp - expected duration of the next sync, time of the last sync</li>
+ * </ul>
+ */
+public class SyncJournal {
+    final private static Logger log = LogManager.getLogger(SyncJournal.class);
+    final private static String NULL = "\\0";
+
+    private final File file;
+    private final int compactThreshold;
+    private final Map<String, ConnectionState> states = new HashMap<>();
+    private int records = 0;
+
+    public SyncJournal(File file, int compactThreshold) {
+        this.file = file;
+        this.compactThreshold = compactThreshold;
+    }
+
+    public synchronized void load() throws IOException {
+        states.clear();
+        records = 0;
+        if (!file.exists()) {
+            return;
+        }
+
+        boolean corrupt = false;
+        String[] lines = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).split("\n", -1);
+        // the last element is empty if the last record was written completely
+        for (int i = 0; i < lines.length - 1; i++) {
+            try {
+                apply(decode(lines[i]));
+                records++;
+            } catch (RuntimeException e) {
+                log.error("Dropping corrupt journal record: " + lines[i]);
+                corrupt = true;
+            }
+        }
+        if (!lines[lines.length - 1].isEmpty()) {
+            log.error("Dropping incomplete journal record: " + lines[lines.length - 1]);
+            corrupt = true;
+        }
+        log.info("Loaded journal " + file.getAbsolutePath() + " with " + states.size() + " connections");
+
+        if (corrupt || records > compactThreshold) {
+            compact();
+        }
+    }
+
+    /**
+     * @return copy of the state of the connection, null if unknown
+     */
+    public synchronized ConnectionState getState(String connection) {
+        ConnectionState state = states.get(connection);
+        if (state == null) {
+            return null;
+        }
+        ConnectionState copy = new ConnectionState();
+        copy.setFingerprint(state.getFingerprint());
+        copy.setTimestamp(state.getTimestamp());
+        copy.setTracks(new HashMap<>(state.getTracks()));
+        copy.setCheckpoint(state.getCheckpoint());
+        copy.setRetries(new HashMap<>(state.getRetries()));
+        copy.setEstimate(state.getEstimate());
+        return copy;
+    }
+
+    /**
+     * Records the result of a sync of the connection
+     *
+     * @param connection  name of the connection
+     * @param fingerprint of the synced track list, null if the connection was not synced completely
+     * @param tracks      state of the tracks on target
+     * @param removedKeys keys of the tracks removed from target
+     */
+    public synchronized void commit(String connection, String fingerprint, Collection<TrackState> tracks, Collection<String> removedKeys) throws IOException {
+        commit(connection, fingerprint, tracks, removedKeys, null);
+    }
+
+    /**
+     * Records the result of a sync of the connection which was stopped by its deadline
+     *
+     * @param checkpoint to resume the sync from, null if the sync was not stopped
+     */
+    public synchronized void commit(String connection, String fingerprint, Collection<TrackState> tracks, Collection<String> removedKeys, Checkpoint checkpoint) throws IOException {
+        ConnectionState state = states.get(connection);
+        List<String[]> batch = new ArrayList<>();
+        for (String key : removedKeys) {
+            if (state == null || state.getTracks().containsKey(key)) {
+                batch.add(new String[]{"D", connection, key});
+            }
+        }
+        for (TrackState track : tracks) {
+            if (state == null || !track.equals(state.getTracks().get(track.getKey()))) {
+                batch.add(trackRecord(connection, track));
+            }
+        }
+        batch.add(new String[]{"C", connection, fingerprint, String.valueOf(System.currentTimeMillis())});
+        if (checkpoint != null) {
+            batch.add(checkpointRecord(connection, checkpoint));
+        }
+        append(batch);
+    }
+
+    /**
+     * Records or drops the checkpoint of a connection whose track states are not journaled
+     *
+     * @param checkpoint to resume the sync from, null to drop it
+     */
+    public synchronized void checkpoint(String connection, Checkpoint checkpoint) throws IOException {
+        ConnectionState state = states.get(connection);
+        if (checkpoint == null && (state == null || state.getCheckpoint() == null)) {
+            return;
+        }
+        List<String[]> batch = new ArrayList<>(1);
+        batch.add(checkpoint != null ? checkpointRecord(connection, checkpoint) : new String[]{"R", connection});
+        append(batch);
+    }
+
+    /**
+     * Records a failed operation of a track
+     *
+     * @param retry state of the track, replaces a previous one
+     */
+    public synchronized void failed(String connection, RetryState retry) throws IOException {
+        List<String[]> batch = new ArrayList<>(1);
+        batch.add(retryRecord(connection, retry));
+        append(batch);
+    }
+
+    /**
+     * Drops the failed operation of a track
+     */
+    public synchronized void recovered(String connection, String id) throws IOException {
+        ConnectionState state = states.get(connection);
+        if (state == null || !state.getRetries().containsKey(id)) {
+            return;
+        }
+        List<String[]> batch = new ArrayList<>(1);
+        batch.add(new String[]{"S", connection, id});
+        append(batch);
+    }
+
+    /**
+     * Records the expected duration of the next sync of a connection
+     */
+    public synchronized void estimate(String connection, SyncEstimate estimate) throws IOException {
+        List<String[]> batch = new ArrayList<>(1);
+        batch.add(estimateRecord(connection, estimate));
+        append(batch);
+    }
+
+    public synchronized void reset(String connection) throws IOException {
+        if (states.containsKey(connection)) {
+            List<String[]> batch = new ArrayList<>(1);
+            batch.add(new String[]{"X", connection});
+            append(batch);
+        }
+    }
+
+    private void append(List<String[]> batch) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (String[] record : batch) {
+            apply(record);
+            lines.append(toLine(record));
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        records += batch.size();
+
+        if (records > compactThreshold && records > 2 * getLiveRecords()) {
+            compact();
+        }
+    }
+
+    private void compact() throws IOException {
+        log.info("Compacting journal " + file.getAbsolutePath() + " with " + records + " records");
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        int live = 0;
+        try (FileOutputStream out = new FileOutputStream(tmp, false)) {
+            StringBuilder lines = new StringBuilder();
+            for (Map.Entry<String, ConnectionState> entry : states.entrySet()) {
+                String connection = entry.getKey();
+                ConnectionState state = entry.getValue();
+                for (TrackState track : state.getTracks().values()) {
+                    lines.append(toLine(trackRecord(connection, track)));
+                    live++;
+                }
+                lines.append(toLine(new String[]{"C", connection, state.getFingerprint(), String.valueOf(state.getTimestamp())}));
+                live++;
+                if (state.getCheckpoint() != null) {
+                    lines.append(toLine(checkpointRecord(connection, state.getCheckpoint())));
+                    live++;
+                }
+                for (RetryState retry : state.getRetries().values()) {
+                    lines.append(toLine(retryRecord(connection, retry)));
+                    live++;
+                }
+                if (state.getEstimate() != null) {
+                    lines.append(toLine(estimateRecord(connection, state.getEstimate())));
+                    live++;
+                }
+            }
+            out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        records = live;
+    }
+
+    private void apply(String[] record) {
+        String connection = record[1];
+        switch (record[0]) {
+            case "C": {
+                ConnectionState state = states.computeIfAbsent(connection, key -> new ConnectionState());
+                state.setFingerprint(record[2]);
+                state.setTimestamp(Long.parseLong(record[3]));
+                state.setCheckpoint(null);
+                break;
+            }
+            case "T": {
+                TrackState track = new TrackState(record[2], record[3], record[4],
+                        Long.parseLong(record[5]), Long.parseLong(record[6]),
+                        Integer.parseInt(record[7]), Integer.parseInt(record[8]));
+                states.computeIfAbsent(connection, key -> new ConnectionState()).getTracks().put(track.getKey(), track);
+                break;
+            }
+            case "D": {
+                ConnectionState state = states.get(connection);
+                if (state != null) {
+                    state.getTracks().remove(record[2]);
+                }
+                break;
+            }
+            case "X":
+                states.remove(connection);
+                break;
+            case "P": {
+                List<String> pending = new ArrayList<>(Arrays.asList(record).subList(5, record.length));
+                Checkpoint checkpoint = new Checkpoint(record[2], Boolean.parseBoolean(record[3]), Long.parseLong(record[4]), pending);
+                states.computeIfAbsent(connection, key -> new ConnectionState()).setCheckpoint(checkpoint);
+                break;
+            }
+            case "R": {
+                ConnectionState state = states.get(connection);
+                if (state != null) {
+                    state.setCheckpoint(null);
+                }
+                break;
+            }
+            case "F": {
+                RetryState retry = new RetryState(record[2], record[3], record[4],
+                        Integer.parseInt(record[5]), Long.parseLong(record[6]));
+                states.computeIfAbsent(connection, key -> new ConnectionState()).getRetries().put(retry.getId(), retry);
+                break;
+            }
+            case "S": {
+                ConnectionState state = states.get(connection);
+                if (state != null) {
+                    state.getRetries().remove(record[2]);
+                }
+                break;
+            }
+            case "E": {
+                SyncEstimate estimate = new SyncEstimate(Long.parseLong(record[2]), Long.parseLong(record[3]));
+                states.computeIfAbsent(connection, key -> new ConnectionState()).setEstimate(estimate);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown record type: " + record[0]);
+        }
+    }
+
+    private int getLiveRecords() {
+        int live = 0;
+        for (ConnectionState state : states.values()) {
+            live += state.getTracks().size() + state.getRetries().size() + (state.getCheckpoint() != null ? 2 : 1) + (state.getEstimate() != null ? 1 : 0);
+        }
+        return live;
+    }
+
+    private static String[] checkpointRecord(String connection, Checkpoint checkpoint) {
+        List<String> record = new ArrayList<>(checkpoint.getPending().size() + 5);
+        record.add("P");
+        record.add(connection);
+        record.add(checkpoint.getFingerprint());
+        record.add(String.valueOf(checkpoint.isPlanned()));
+        record.add(String.valueOf(checkpoint.getTimestamp()));
+        record.addAll(checkpoint.getPending());
+        return record.toArray(new String[0]);
+    }
+
+    private static String[] retryRecord(String connection, RetryState retry) {
+        return new String[]{"F", connection, retry.getId(), retry.getOperation(), retry.getError(),
+                String.valueOf(retry.getAttempts()), String.valueOf(retry.getNextAttempt())};
+    }
+
+    private static String[] estimateRecord(String connection, SyncEstimate estimate) {
+        return new String[]{"E", connection, String.valueOf(estimate.getDuration()), String.valueOf(estimate.getTimestamp())};
+    }
+
+    private static String[] trackRecord(String connection, TrackState track) {
+        return new String[]{"T", connection, track.getKey(), track.getId(), track.getPath(),
+                String.valueOf(track.getSize()), String.valueOf(track.getLastModified()),
+                String.valueOf(track.getTrackDuration()), String.valueOf(track.getTargetDuration())};
+    }
+
+    private static String[] decode(String line) {
+        String[] record = line.split("\t", -1);
+        for (int i = 1; i < record.length; i++) {
+            record[i] = unescape(record[i]);
+        }
+        return record;
+    }
+
+    private static String toLine(String[] record) {
+        StringBuilder line = new StringBuilder(record[0]);
+        for (int i = 1; i < record.length; i++) {
+            line.append('\t').append(escape(record[i]));
+        }
+        return line.append('\n').toString();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(String value) {
+        if (NULL.equals(value)) {
+            return null;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
@@ -0,0 +1,18 @@
+package rocks.voss.musicsync.application.state;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackState {
+    private String key;
+    private String id;
+    private String path;
+    private long size;
+    private long lastModified;
+    private int trackDuration;
+    private int targetDuration;
+}
@@ -0,0 +1,48 @@
+package rocks.voss.musicsync.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rocks.voss.musicsync.plugins.filesystemin.Base62Encoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of the track ids of the filesystem input plugin, every file name is padded to 16 bytes before it is encoded
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base62EncoderBenchmark {
+    private Base62Encoder encoder;
+    private byte[] message;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        encoder = Base62Encoder.createInstance();
+        message = "__001_Track.mp3".getBytes(StandardCharsets.UTF_8);
+        encoded = encoder.encode(message);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encoder.encode(message);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return encoder.decode(encoded);
+    }
+}
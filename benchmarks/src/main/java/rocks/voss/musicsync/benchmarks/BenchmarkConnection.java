@@ -0,0 +1,42 @@
+package rocks.voss.musicsync.benchmarks;
+
+import lombok.Getter;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncInputPlugin;
+import rocks.voss.musicsync.api.SyncOutputPlugin;
+
+/**
+ * Connection for the benchmarks which calls plugins directly, without the plugin loader of the application
+ */
+@Getter
+public class BenchmarkConnection implements SyncConnection {
+    private final String name = "benchmark";
+    private final SyncInputPlugin syncInputPlugin;
+    private final Object inputConfig;
+    private final SyncOutputPlugin syncOutputPlugin;
+    private final Object outputConfig;
+
+    public BenchmarkConnection(SyncInputPlugin syncInputPlugin, Object inputConfig) {
+        this.syncInputPlugin = syncInputPlugin;
+        this.inputConfig = inputConfig;
+        this.syncOutputPlugin = null;
+        this.outputConfig = null;
+    }
+
+    public BenchmarkConnection(SyncOutputPlugin syncOutputPlugin, Object outputConfig) {
+        this.syncInputPlugin = null;
+        this.inputConfig = null;
+        this.syncOutputPlugin = syncOutputPlugin;
+        this.outputConfig = outputConfig;
+    }
+
+    @Override
+    public String getInputSchema() {
+        return syncInputPlugin != null ? syncInputPlugin.getSchema() : null;
+    }
+
+    @Override
+    public String getOutputSchema() {
+        return syncOutputPlugin != null ? syncOutputPlugin.getSchema() : null;
+    }
+}
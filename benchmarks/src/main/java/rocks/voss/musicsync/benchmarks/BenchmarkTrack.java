@@ -0,0 +1,44 @@
+package rocks.voss.musicsync.benchmarks;
+
+import lombok.Getter;
+import lombok.Setter;
+import rocks.voss.musicsync.api.SyncPlugin;
+import rocks.voss.musicsync.api.SyncTrack;
+
+/**
+ * In-memory track for the benchmarks, named like the tracks of the filesystem input plugin
+ */
+@Getter
+public class BenchmarkTrack implements SyncTrack {
+    private final String id;
+    private final String uri;
+    private final String[] artists;
+    private final String name;
+    private final int trackNumber;
+    private final int trackDuration;
+    private final String album;
+    private final String path;
+    @Setter
+    private boolean fresh;
+
+    public BenchmarkTrack(int trackNumber) {
+        this.id = String.format("%022d", trackNumber);
+        this.trackNumber = trackNumber;
+        this.name = "Track number " + trackNumber;
+        this.artists = new String[]{"Artist " + trackNumber % 10};
+        this.album = "Benchmark";
+        this.path = "/benchmark/" + trackNumber + ".mp3";
+        this.uri = "file://" + path;
+        this.trackDuration = 180_000 + trackNumber % 60 * 1000;
+    }
+
+    @Override
+    public SyncPlugin getPlugin() {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "BenchmarkTrack [id=" + id + ", name=" + name + "]";
+    }
+}
@@ -0,0 +1,94 @@
+package rocks.voss.musicsync.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import rocks.voss.jsonhelper.JSONHelper;
+import rocks.voss.musicsync.api.SyncTrack;
+import rocks.voss.musicsync.plugins.toniebox.ChapterMatcher;
+import rocks.voss.toniebox.beans.toniebox.Chapter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Title building & chapter matching of the Toniebox plugin for a tonie with the given number of chapters, as done by
+ * the ordering and the clean up of a connection. The chapters are in-memory, every second chapter belongs to a track
+ * of the connection, every tenth was added by hand & is not managed by the plugin.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChapterMatcherBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    private int chapters;
+
+    private ChapterMatcher matcher;
+    private SyncTrack[] tracks;
+    private Chapter[] tonieChapters;
+
+    @Setup
+    public void setUp() throws IOException {
+        matcher = new ChapterMatcher(2000);
+
+        tracks = new SyncTrack[chapters];
+        for (int i = 0; i < chapters; i++) {
+            tracks[i] = new BenchmarkTrack(i + 1);
+        }
+
+        tonieChapters = new Chapter[chapters];
+        for (int i = 0; i < chapters; i++) {
+            SyncTrack track = new BenchmarkTrack(i * 2 + 1);
+            String title = i % 10 == 9 ? "Recorded by hand " + i : matcher.getTitle(track);
+            tonieChapters[i] = createChapter(i, title, track.getTrackDuration() / 1000f);
+        }
+    }
+
+    private static Chapter createChapter(int id, String title, float seconds) throws IOException {
+        Map<String, Object> chapter = new HashMap<>();
+        chapter.put("id", String.valueOf(id));
+        chapter.put("title", title);
+        chapter.put("seconds", seconds);
+        return JSONHelper.createBean(Chapter.class, chapter);
+    }
+
+    @Benchmark
+    public void getTrackTitle(Blackhole blackhole) {
+        for (SyncTrack track : tracks) {
+            blackhole.consume(matcher.getTitle(track));
+        }
+    }
+
+    @Benchmark
+    public void findChapter(Blackhole blackhole) {
+        Map<String, Chapter> chapterIndex = matcher.indexChapters(tonieChapters);
+        for (SyncTrack track : tracks) {
+            blackhole.consume(matcher.findChapter(chapterIndex, track));
+        }
+    }
+
+    @Benchmark
+    public void isChapterToBeRemoved(Blackhole blackhole) {
+        Map<String, SyncTrack> trackIndex = new HashMap<>(tracks.length * 2);
+        for (SyncTrack track : tracks) {
+            trackIndex.putIfAbsent(matcher.getTitle(track), track);
+        }
+        for (Chapter chapter : tonieChapters) {
+            blackhole.consume(matcher.isToBeRemoved(trackIndex, chapter));
+        }
+    }
+}
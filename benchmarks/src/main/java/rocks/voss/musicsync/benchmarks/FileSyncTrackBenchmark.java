@@ -0,0 +1,53 @@
+package rocks.voss.musicsync.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rocks.voss.musicsync.plugins.filesystemin.FileSyncTrack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Id of a track of the filesystem input plugin, which is calculated on every call. The track is created once, its
+ * constructor runs ffprobe.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileSyncTrackBenchmark {
+    private File directory;
+    private FileSyncTrack track;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("musicsync-benchmark").toFile();
+        File file = new File(directory, "001_Benchmark_Track.mp3");
+        Files.write(file.toPath(), new byte[0]);
+        track = new FileSyncTrack(null, file, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        new File(directory, "001_Benchmark_Track.mp3").delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public String getId() {
+        return track.getId();
+    }
+}
@@ -0,0 +1,83 @@
+package rocks.voss.musicsync.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncTrack;
+import rocks.voss.musicsync.plugins.filesystem.FilesystemPlugin;
+import rocks.voss.musicsync.plugins.filesystem.config.SyncConfiguration;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of the filesystem output plugin in a folder which already holds all tracks of the connection, so the
+ * clean up lists the folder without removing anything and every iteration sees the same files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilesystemPluginBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    private int files;
+
+    private File directory;
+    private FilesystemPlugin plugin;
+    private SyncConnection connection;
+    private List<SyncTrack> tracks;
+    private SyncTrack lastTrack;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("musicsync-benchmark").toFile();
+        plugin = new FilesystemPlugin();
+        plugin.init(Map.of("directory", directory.getAbsolutePath()));
+        connection = new BenchmarkConnection(plugin, new SyncConfiguration());
+
+        tracks = new ArrayList<>(files);
+        for (int i = 1; i <= files; i++) {
+            BenchmarkTrack track = new BenchmarkTrack(i);
+            Files.write(new File(directory, plugin.getTrackKey(track)).toPath(), new byte[0]);
+            tracks.add(track);
+        }
+        lastTrack = tracks.get(files - 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public boolean isTrackUploaded() {
+        return plugin.isTrackUploaded(connection, lastTrack);
+    }
+
+    @Benchmark
+    public void cleanUpTracks() {
+        plugin.cleanUpTracks(connection, tracks);
+    }
+}
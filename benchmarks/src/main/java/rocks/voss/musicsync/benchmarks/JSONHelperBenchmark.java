@@ -0,0 +1,67 @@
+package rocks.voss.musicsync.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rocks.voss.jsonhelper.JSONHelper;
+import rocks.voss.musicsync.application.config.Configuration;
+import rocks.voss.musicsync.plugins.filesystem.config.SyncConfiguration;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding of the configuration file to the configuration of the application, done at start & on every reload, and of
+ * the configuration of a connection to the configuration class of its plugin, done for every changed connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSONHelperBenchmark {
+    @Param({"10", "100", "1000"})
+    private int connections;
+
+    private String configuration;
+    private Map<String, Object> connectionConfiguration;
+
+    @Setup
+    public void setUp() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"general\":{\"timeout\":0,\"threads\":4},");
+        json.append("\"plugins\":[{\"plugin\":\"filesystem\",\"config\":{\"directory\":\"/tmp/out\"}}],");
+        json.append("\"connections\":[");
+        for (int i = 0; i < connections; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":\"connection").append(i).append("\",")
+                    .append("\"in\":{\"plugin\":\"filesystemin\",\"config\":{\"directory\":\"/tmp/in/").append(i).append("\"}},")
+                    .append("\"out\":{\"plugin\":\"filesystem\",\"config\":{\"directory\":\"/tmp/out/").append(i).append("\"}}}");
+        }
+        json.append("]}");
+        configuration = json.toString();
+        connectionConfiguration = Map.of("directory", "/tmp/out/0");
+    }
+
+    @Benchmark
+    public Configuration configuration() throws IOException {
+        return JSONHelper.createBean(Configuration.class, configuration);
+    }
+
+    @Benchmark
+    public SyncConfiguration connectionConfiguration() throws IOException {
+        return JSONHelper.createBean(SyncConfiguration.class, connectionConfiguration);
+    }
+}
@@ -0,0 +1,79 @@
+package rocks.voss.musicsync.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncTrack;
+import rocks.voss.musicsync.benchmarks.http.SpotifyStandIn;
+import rocks.voss.musicsync.plugins.spotify.SpotifyPlugin;
+import rocks.voss.musicsync.plugins.spotify.config.SyncConfiguration;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests of the Spotify input plugin against the local stand-in of the Web API, without latency, so the paging,
+ * the JSON parsing of the client library and the mapping into tracks are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpotifyPluginBenchmark {
+    @Param({"100", "1000"})
+    private int tracks;
+
+    private SpotifyStandIn standIn;
+    private SpotifyPlugin plugin;
+    private SyncConnection connection;
+
+    @Setup
+    public void setUp() throws Exception {
+        standIn = new SpotifyStandIn(0);
+        standIn.start();
+        // a few other playlists, the plugin looks the playlist of the connection up in all of them
+        for (int i = 0; i < 20; i++) {
+            standIn.addPlaylist("Playlist " + i, 10);
+        }
+        SyncConfiguration config = new SyncConfiguration();
+        config.setUri(standIn.addPlaylist("Benchmark", tracks));
+
+        plugin = new SpotifyPlugin();
+        plugin.init(Map.of(
+                "clientId", "stand-in",
+                "clientSecret", "stand-in",
+                "refreshToken", "stand-in-refresh-token",
+                "baseUri", standIn.getBaseUri().toString()));
+        plugin.establishConnection();
+        connection = new BenchmarkConnection(plugin, config);
+    }
+
+    @TearDown
+    public void tearDown() {
+        plugin.closeConnection();
+        standIn.stop();
+    }
+
+    @Benchmark
+    public String getTracklistFingerprint() {
+        return plugin.getTracklistFingerprint(connection);
+    }
+
+    @Benchmark
+    public List<SyncTrack> getTracklist() {
+        return plugin.getTracklist(connection);
+    }
+}
@@ -0,0 +1,212 @@
+package rocks.voss.musicsync.benchmarks.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-in of the Spotify Web API & the token endpoint of the accounts service, serving generated playlists. The
+ * Spotify plugin is pointed at it with its {@code baseUri}. Playlists & the tracks of a playlist are paged like the Web
+ * API, so large playlists cost the same number of requests.
+ */
+public class SpotifyStandIn extends StandInServer {
+    private final Map<String, Playlist> playlists = new ConcurrentHashMap<>();
+    private final List<String> playlistOrder = new ArrayList<>();
+    private final Map<String, Map<String, Object>> tracks = new ConcurrentHashMap<>();
+    private int nextId;
+
+    /**
+     * @param port to listen on, 0 for any free port
+     */
+    public SpotifyStandIn(int port) throws IOException {
+        super(port);
+        route("POST", "/api/token", request -> getToken());
+        route("GET", "/v1/me/playlists", request -> getPlaylists(request.getQuery("offset", 0), Math.min(request.getQuery("limit", 20), 50)));
+        route("GET", "/v1/playlists/([^/]+)/tracks", request -> getPlaylistTracks(request.getPath(1), request.getQuery("offset", 0), Math.min(request.getQuery("limit", 100), 100)));
+        route("GET", "/v1/tracks/([^/]+)", request -> getTrack(request.getPath(1)));
+    }
+
+    /**
+     * Generates a playlist with new tracks
+     *
+     * @return Spotify URI of the playlist
+     */
+    public synchronized String addPlaylist(String name, int trackCount) {
+        Playlist playlist = new Playlist(createId(), name);
+        for (int i = 0; i < trackCount; i++) {
+            playlist.trackIds.add(createTrack(i + 1));
+        }
+        playlists.put(playlist.id, playlist);
+        playlistOrder.add(playlist.id);
+        return "spotify:playlist:" + playlist.id;
+    }
+
+    /**
+     * Replaces tracks of a playlist by new tracks, which changes its snapshot id
+     */
+    public synchronized void changePlaylist(String uri, int replaced) {
+        Playlist playlist = playlists.get(uri.substring(uri.lastIndexOf(':') + 1));
+        for (int i = 0; i < replaced && i < playlist.trackIds.size(); i++) {
+            playlist.trackIds.set(i, createTrack(i + 1));
+        }
+        playlist.snapshot++;
+    }
+
+    private Object getToken() {
+        Map<String, Object> token = new LinkedHashMap<>();
+        token.put("access_token", "stand-in-access-token");
+        token.put("token_type", "Bearer");
+        token.put("scope", "playlist-read-private playlist-read-collaborative");
+        token.put("expires_in", 3600);
+        token.put("refresh_token", "stand-in-refresh-token");
+        return token;
+    }
+
+    private synchronized Object getPlaylists(int offset, int limit) {
+        List<Object> items = new ArrayList<>();
+        for (int i = offset; i < offset + limit && i < playlistOrder.size(); i++) {
+            items.add(toJson(playlists.get(playlistOrder.get(i))));
+        }
+        return page("/v1/me/playlists", items, offset, limit, playlistOrder.size());
+    }
+
+    private synchronized Object getPlaylistTracks(String id, int offset, int limit) throws StandInException {
+        Playlist playlist = playlists.get(id);
+        if (playlist == null) {
+            throw new StandInException(404, "Not found");
+        }
+        List<Object> items = new ArrayList<>();
+        for (int i = offset; i < offset + limit && i < playlist.trackIds.size(); i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("added_at", "2022-01-01T00:00:00Z");
+            item.put("added_by", getUser());
+            item.put("is_local", false);
+            item.put("track", tracks.get(playlist.trackIds.get(i)));
+            items.add(item);
+        }
+        return page("/v1/playlists/" + id + "/tracks", items, offset, limit, playlist.trackIds.size());
+    }
+
+    private Object getTrack(String id) throws StandInException {
+        Map<String, Object> track = tracks.get(id);
+        if (track == null) {
+            throw new StandInException(404, "Non existing id: 'spotify:track:" + id + "'");
+        }
+        return track;
+    }
+
+    private Object page(String path, List<Object> items, int offset, int limit, int total) {
+        String href = getBaseUri() + path;
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("href", href + "?offset=" + offset + "&limit=" + limit);
+        page.put("items", items);
+        page.put("limit", limit);
+        page.put("next", offset + limit < total ? href + "?offset=" + (offset + limit) + "&limit=" + limit : null);
+        page.put("offset", offset);
+        page.put("previous", offset > 0 ? href + "?offset=" + Math.max(offset - limit, 0) + "&limit=" + limit : null);
+        page.put("total", total);
+        return page;
+    }
+
+    private Map<String, Object> toJson(Playlist playlist) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("collaborative", false);
+        json.put("external_urls", Map.of("spotify", "https://open.spotify.com/playlist/" + playlist.id));
+        json.put("href", getBaseUri() + "/v1/playlists/" + playlist.id);
+        json.put("id", playlist.id);
+        json.put("images", List.of());
+        json.put("name", playlist.name);
+        json.put("owner", getUser());
+        json.put("public", false);
+        json.put("snapshot_id", playlist.id + "-" + playlist.snapshot);
+        json.put("tracks", Map.of("href", getBaseUri() + "/v1/playlists/" + playlist.id + "/tracks", "total", playlist.trackIds.size()));
+        json.put("type", "playlist");
+        json.put("uri", "spotify:playlist:" + playlist.id);
+        return json;
+    }
+
+    private Map<String, Object> getUser() {
+        Map<String, Object> user = new LinkedHashMap<>();
+        user.put("display_name", "Stand-in");
+        user.put("external_urls", Map.of("spotify", "https://open.spotify.com/user/stand-in"));
+        user.put("href", getBaseUri() + "/v1/users/stand-in");
+        user.put("id", "stand-in");
+        user.put("type", "user");
+        user.put("uri", "spotify:user:stand-in");
+        return user;
+    }
+
+    private String createTrack(int trackNumber) {
+        String id = createId();
+        Map<String, Object> artist = new LinkedHashMap<>();
+        artist.put("external_urls", Map.of());
+        artist.put("href", getBaseUri() + "/v1/artists/artist" + trackNumber % 10);
+        artist.put("id", "artist" + trackNumber % 10);
+        artist.put("name", "Artist " + trackNumber % 10);
+        artist.put("type", "artist");
+        artist.put("uri", "spotify:artist:artist" + trackNumber % 10);
+
+        Map<String, Object> album = new LinkedHashMap<>();
+        album.put("album_type", "album");
+        album.put("artists", List.of(artist));
+        album.put("available_markets", List.of());
+        album.put("external_urls", Map.of());
+        album.put("href", getBaseUri() + "/v1/albums/album");
+        album.put("id", "album");
+        album.put("images", List.of());
+        album.put("name", "Stand-in Album");
+        album.put("release_date", "2022-01-01");
+        album.put("release_date_precision", "day");
+        album.put("type", "album");
+        album.put("uri", "spotify:album:album");
+
+        Map<String, Object> track = new LinkedHashMap<>();
+        track.put("album", album);
+        track.put("artists", List.of(artist));
+        track.put("available_markets", List.of());
+        track.put("disc_number", 1);
+        track.put("duration_ms", 120_000 + trackNumber % 120 * 1000);
+        track.put("explicit", false);
+        track.put("external_ids", Map.of());
+        track.put("external_urls", Map.of("spotify", "https://open.spotify.com/track/" + id));
+        track.put("href", getBaseUri() + "/v1/tracks/" + id);
+        track.put("id", id);
+        track.put("is_local", false);
+        track.put("name", "Track " + trackNumber);
+        track.put("popularity", 50);
+        track.put("track_number", trackNumber);
+        track.put("type", "track");
+        track.put("uri", "spotify:track:" + id);
+        tracks.put(id, track);
+        return id;
+    }
+
+    /**
+     * @return base62 id with 22 characters like the ids of Spotify
+     */
+    private String createId() {
+        String alphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+        char[] id = new char[22];
+        long value = ++nextId;
+        for (int i = id.length - 1; i >= 0; i--) {
+            id[i] = alphabet.charAt((int) (value % 62));
+            value /= 62;
+        }
+        return new String(id);
+    }
+
+    private static class Playlist {
+        private final String id;
+        private final String name;
+        private final List<String> trackIds = new ArrayList<>();
+        private int snapshot = 1;
+
+        Playlist(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+}
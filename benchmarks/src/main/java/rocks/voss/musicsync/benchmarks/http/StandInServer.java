@@ -0,0 +1,255 @@
+package rocks.voss.musicsync.benchmarks.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local HTTP server standing in for a remote service, on the loopback interface only. Every request waits for the
+ * latency plus a random jitter. Requests beyond the rate limit of the current second are answered with 429 and a
+ * Retry-After header, like the rate limits of the real services. The requests are counted per route.
+ */
+public abstract class StandInServer {
+    final private static Logger log = LogManager.getLogger(StandInServer.class);
+
+    static {
+        // headers & body are written separately, with Nagle's algorithm every response waits for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    protected final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final List<Route> routes = new ArrayList<>();
+    private final Map<String, LongAdder> requests = new ConcurrentSkipListMap<>();
+    private volatile int latency;
+    private volatile int jitter;
+    private volatile int rateLimit;
+    private long second;
+    private int used;
+
+    /**
+     * @param port to listen on, 0 for any free port
+     */
+    protected StandInServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        log.info(getClass().getSimpleName() + " listening on " + getBaseUri());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public URI getBaseUri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    /**
+     * @param latency milliseconds every request takes at least
+     * @param jitter  milliseconds a request takes at most on top of the latency
+     */
+    public void setLatency(int latency, int jitter) {
+        this.latency = latency;
+        this.jitter = jitter;
+    }
+
+    /**
+     * @param rateLimit requests per second, further requests are answered with 429, 0 for no limit
+     */
+    public void setRateLimit(int rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * @return number of requests per route, including rejected ones
+     */
+    public Map<String, Long> getRequests() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        requests.forEach((route, count) -> counts.put(route, count.sum()));
+        return counts;
+    }
+
+    /**
+     * @param path regular expression of the path, its groups are passed to the handler
+     */
+    protected void route(String method, String path, Handler handler) {
+        routes.add(new Route(method, Pattern.compile(path), handler));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            for (Route route : routes) {
+                Matcher matcher = route.path.matcher(path);
+                if (!route.method.equals(exchange.getRequestMethod()) || !matcher.matches()) {
+                    continue;
+                }
+                requests.computeIfAbsent(route.method + " " + route.path.pattern(), key -> new LongAdder()).increment();
+                delay();
+                if (!acquire()) {
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                    respond(exchange, 429, error(429, "API rate limit exceeded"));
+                    return;
+                }
+                Request request = new Request(matcher, parseQuery(exchange.getRequestURI().getRawQuery()), exchange.getRequestBody().readAllBytes());
+                try {
+                    respond(exchange, 200, route.handler.handle(request));
+                } catch (StandInException e) {
+                    respond(exchange, e.status, error(e.status, e.getMessage()));
+                }
+                return;
+            }
+            requests.computeIfAbsent("unknown", key -> new LongAdder()).increment();
+            log.error("No route for " + exchange.getRequestMethod() + " " + path);
+            respond(exchange, 404, error(404, "Not found"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Exception", e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        int delay = latency + (jitter > 0 ? ThreadLocalRandom.current().nextInt(jitter + 1) : 0);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    private synchronized boolean acquire() {
+        if (rateLimit <= 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        if (now != second) {
+            second = now;
+            used = 0;
+        }
+        return ++used <= rateLimit;
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = body != null ? mapper.writeValueAsBytes(body) : new byte[0];
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    protected Object error(int status, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("status", status);
+        error.put("message", message);
+        return Map.of("error", error);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = separator >= 0 ? parameter.substring(0, separator) : parameter;
+            String value = separator >= 0 ? parameter.substring(separator + 1) : "";
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    protected interface Handler {
+        /**
+         * @return body of the response, serialized as JSON, null for no body
+         */
+        Object handle(Request request) throws Exception;
+    }
+
+    protected static class Request {
+        private final Matcher path;
+        private final Map<String, String> query;
+        private final byte[] body;
+
+        Request(Matcher path, Map<String, String> query, byte[] body) {
+            this.path = path;
+            this.query = query;
+            this.body = body;
+        }
+
+        String getPath(int group) {
+            return path.group(group);
+        }
+
+        int getQuery(String name, int defaultValue) {
+            String value = query.get(name);
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * Answers a request with an error status
+     */
+    protected static class StandInException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        StandInException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static class Route {
+        private final String method;
+        private final Pattern path;
+        private final Handler handler;
+
+        Route(String method, Pattern path, Handler handler) {
+            this.method = method;
+            this.path = path;
+            this.handler = handler;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package rocks.voss.musicsync.benchmarks.http;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.System.exit;
+
+/**
+ * Runs the stand-ins of Spotify & the Toniebox cloud with generated playlists and creative tonies until it is killed,
+ * e.g. to run the application against them with a configuration whose plugins point to their base URIs.
+ */
+public class StandIns {
+    final private static List<String> OPTIONS = Arrays.asList("--spotify-port", "--toniebox-port", "--latency", "--jitter", "--rate",
+            "--playlists", "--tracks", "--tonies", "--chapters");
+
+    public static void main(String[] args) throws Exception {
+        int[] values = {8081, 8082, 0, 0, 0, 5, 100, 5, 20};
+        for (int i = 0; i < args.length; i++) {
+            int option = OPTIONS.indexOf(args[i]);
+            if (option < 0 || i + 1 >= args.length || !StringUtils.isNumeric(args[i + 1])) {
+                System.out.print("Usage: StandIns [" + StringUtils.join(OPTIONS, " N] [") + " N]\n");
+                exit(1);
+            }
+            values[option] = Integer.parseInt(args[++i]);
+        }
+
+        SpotifyStandIn spotify = new SpotifyStandIn(values[0]);
+        TonieboxStandIn toniebox = new TonieboxStandIn(values[1]);
+        for (StandInServer server : Arrays.asList(spotify, toniebox)) {
+            server.setLatency(values[2], values[3]);
+            server.setRateLimit(values[4]);
+        }
+        for (int i = 1; i <= values[5]; i++) {
+            System.out.print("Spotify playlist: " + spotify.addPlaylist("Playlist " + i, values[6]) + "\n");
+        }
+        String household = toniebox.addHousehold("Stand-in");
+        for (int i = 1; i <= values[7]; i++) {
+            System.out.print("Creative tonie: /v2/households/" + household + "/creativetonies/" + toniebox.addCreativeTonie(household, "Tonie " + i, values[8]) + "\n");
+        }
+
+        spotify.start();
+        toniebox.start();
+        System.out.print("Spotify stand-in: " + spotify.getBaseUri() + "\n");
+        System.out.print("Toniebox stand-in: " + toniebox.getBaseUri() + "\n");
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,209 @@
+package rocks.voss.musicsync.benchmarks.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-in of the Toniebox cloud: login, households, creative tonies, file uploads and chapter commits, with the limits
+ * of a creative tonie (99 chapters, 90 minutes). An uploaded file becomes a chapter once it is committed, its duration
+ * is derived from its size at 128 kbit/s.
+ */
+public class TonieboxStandIn extends StandInServer {
+    final private static int MAX_CHAPTERS = 99;
+    final private static int MAX_SECONDS = 90 * 60;
+    final private static int BYTES_PER_SECOND = 16_000;
+
+    private final Map<String, String> households = new LinkedHashMap<>();
+    private final Map<String, Tonie> tonies = new LinkedHashMap<>();
+    private final Map<String, Long> files = new ConcurrentHashMap<>();
+
+    /**
+     * @param port to listen on, 0 for any free port
+     */
+    public TonieboxStandIn(int port) throws IOException {
+        super(port);
+        route("POST", "/auth/realms/tonies/protocol/openid-connect/token", request -> getToken());
+        route("GET", "/v2/me", request -> Map.of("uuid", "stand-in", "email", "stand-in@localhost", "firstName", "Stand-in"));
+        route("GET", "/v2/households", request -> getHouseholds());
+        route("GET", "/v2/households/([^/]+)/creativetonies", request -> getTonies(request.getPath(1)));
+        route("GET", "/v2/households/([^/]+)/creativetonies/([^/]+)", request -> toJson(getTonie(request.getPath(1), request.getPath(2))));
+        route("PATCH", "/v2/households/([^/]+)/creativetonies/([^/]+)", request -> commit(request.getPath(1), request.getPath(2), request.getBody()));
+        route("POST", "/v2/file", request -> createUpload());
+        route("POST", "/upload/([^/]+)", request -> upload(request.getPath(1), request.getBody()));
+    }
+
+    /**
+     * @return id of the new household
+     */
+    public synchronized String addHousehold(String name) {
+        String id = UUID.randomUUID().toString();
+        households.put(id, name);
+        return id;
+    }
+
+    /**
+     * Creates a creative tonie with chapters titled like the chapters of the Toniebox plugin
+     *
+     * @return id of the new creative tonie
+     */
+    public synchronized String addCreativeTonie(String householdId, String name, int chapters) {
+        Tonie tonie = new Tonie(UUID.randomUUID().toString(), householdId, name);
+        for (int i = 0; i < chapters; i++) {
+            String id = String.format("%022d", i + 1);
+            tonie.chapters.add(createChapter(id, id + " - Artist " + i % 10 + " - Track " + (i + 1), 60));
+        }
+        tonies.put(tonie.id, tonie);
+        return tonie.id;
+    }
+
+    private Object getToken() {
+        Map<String, Object> token = new LinkedHashMap<>();
+        token.put("access_token", "stand-in-access-token");
+        token.put("expires_in", 300);
+        token.put("refresh_expires_in", 1800);
+        token.put("refresh_token", "stand-in-refresh-token");
+        token.put("token_type", "bearer");
+        return token;
+    }
+
+    private synchronized Object getHouseholds() {
+        List<Object> json = new ArrayList<>();
+        households.forEach((id, name) -> {
+            Map<String, Object> household = new LinkedHashMap<>();
+            household.put("id", id);
+            household.put("name", name);
+            household.put("access", "owner");
+            household.put("canLeave", true);
+            household.put("foreignCreativeTonieContent", false);
+            household.put("ownerName", "Stand-in");
+            json.add(household);
+        });
+        return json;
+    }
+
+    private synchronized Object getTonies(String householdId) throws StandInException {
+        if (!households.containsKey(householdId)) {
+            throw new StandInException(404, "Household not found");
+        }
+        List<Object> json = new ArrayList<>();
+        for (Tonie tonie : tonies.values()) {
+            if (tonie.householdId.equals(householdId)) {
+                json.add(toJson(tonie));
+            }
+        }
+        return json;
+    }
+
+    private synchronized Tonie getTonie(String householdId, String id) throws StandInException {
+        Tonie tonie = tonies.get(id);
+        if (tonie == null || !tonie.householdId.equals(householdId)) {
+            throw new StandInException(404, "Creative tonie not found");
+        }
+        return tonie;
+    }
+
+    /**
+     * Replaces the chapters of the tonie. Known chapters are referenced by id, new chapters by the id of an upload.
+     */
+    private synchronized Object commit(String householdId, String id, byte[] body) throws StandInException, IOException {
+        Tonie tonie = getTonie(householdId, id);
+        JsonNode chapters = mapper.readTree(body).path("chapters");
+        Map<String, Map<String, Object>> known = new LinkedHashMap<>();
+        for (Map<String, Object> chapter : tonie.chapters) {
+            known.put((String) chapter.get("id"), chapter);
+        }
+
+        List<Map<String, Object>> committed = new ArrayList<>();
+        int seconds = 0;
+        for (JsonNode chapter : chapters) {
+            String chapterId = chapter.path("id").asText();
+            String file = chapter.path("file").asText();
+            Map<String, Object> next = known.get(chapterId);
+            if (next == null && files.containsKey(file)) {
+                next = createChapter(file, chapter.path("title").asText(), (int) Math.max(files.remove(file) / BYTES_PER_SECOND, 1));
+            } else if (next == null) {
+                throw new StandInException(422, "Unknown chapter or file: " + chapterId);
+            } else {
+                next.put("title", chapter.path("title").asText((String) next.get("title")));
+            }
+            seconds += ((Number) next.get("seconds")).intValue();
+            committed.add(next);
+        }
+        if (committed.size() > MAX_CHAPTERS || seconds > MAX_SECONDS) {
+            throw new StandInException(422, "Creative tonie is full: " + committed.size() + " chapters, " + seconds + " seconds");
+        }
+        tonie.chapters.clear();
+        tonie.chapters.addAll(committed);
+        return toJson(tonie);
+    }
+
+    private Object createUpload() {
+        String fileId = UUID.randomUUID().toString();
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("key", fileId);
+        fields.put("x-amz-algorithm", "AWS4-HMAC-SHA256");
+        fields.put("policy", "stand-in");
+
+        Map<String, Object> upload = new LinkedHashMap<>();
+        upload.put("fileId", fileId);
+        upload.put("expires", 300);
+        upload.put("request", Map.of("url", getBaseUri() + "/upload/" + fileId, "fields", fields));
+        return upload;
+    }
+
+    private Object upload(String fileId, byte[] body) {
+        files.put(fileId, (long) body.length);
+        return null;
+    }
+
+    private static Map<String, Object> createChapter(String id, String title, int seconds) {
+        Map<String, Object> chapter = new LinkedHashMap<>();
+        chapter.put("id", id);
+        chapter.put("title", title);
+        chapter.put("file", id);
+        chapter.put("seconds", seconds);
+        chapter.put("transcoding", false);
+        return chapter;
+    }
+
+    private Object toJson(Tonie tonie) {
+        int seconds = 0;
+        for (Map<String, Object> chapter : tonie.chapters) {
+            seconds += ((Number) chapter.get("seconds")).intValue();
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", tonie.id);
+        json.put("householdId", tonie.householdId);
+        json.put("name", tonie.name);
+        json.put("imageUrl", getBaseUri() + "/images/" + tonie.id);
+        json.put("live", false);
+        json.put("private", true);
+        json.put("transcoding", false);
+        json.put("secondsPresent", seconds);
+        json.put("secondsRemaining", Math.max(MAX_SECONDS - seconds, 0));
+        json.put("chaptersPresent", tonie.chapters.size());
+        json.put("chaptersRemaining", Math.max(MAX_CHAPTERS - tonie.chapters.size(), 0));
+        json.put("chapters", new ArrayList<>(tonie.chapters));
+        return json;
+    }
+
+    private static class Tonie {
+        private final String id;
+        private final String householdId;
+        private final String name;
+        private final List<Map<String, Object>> chapters = new ArrayList<>();
+
+        Tonie(String id, String householdId, String name) {
+            this.id = id;
+            this.householdId = householdId;
+            this.name = name;
+        }
+    }
+}
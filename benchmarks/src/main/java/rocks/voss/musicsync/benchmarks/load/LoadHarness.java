@@ -0,0 +1,155 @@
+package rocks.voss.musicsync.benchmarks.load;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.jsonhelper.JSONHelper;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.application.PluginLoader;
+import rocks.voss.musicsync.application.config.ClusterConfiguration;
+import rocks.voss.musicsync.application.config.Configuration;
+import rocks.voss.musicsync.application.config.SyncConfiguration;
+import rocks.voss.musicsync.application.engine.BandwidthLimiter;
+import rocks.voss.musicsync.application.engine.ConnectionExecutor;
+import rocks.voss.musicsync.application.engine.ConnectionLeases;
+import rocks.voss.musicsync.application.engine.Deadline;
+import rocks.voss.musicsync.application.engine.SyncEngine;
+import rocks.voss.musicsync.application.engine.SyncResult;
+import rocks.voss.musicsync.application.engine.Tuning;
+import rocks.voss.musicsync.application.impl.SyncConnectionImpl;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.System.exit;
+
+/**
+ * Runs full sync cycles of the engine like a one-shot run of the application, against a configuration whose
+ * connections use the synthetic plugins. After every cycle it reports the latency percentiles per stage, the remote
+ * calls, the bytes moved and the heap usage, so changes of the engine can be measured without any network.
+ */
+public class LoadHarness {
+    final private static Logger log = LogManager.getLogger(LoadHarness.class);
+
+    public static void main(String[] args) throws Exception {
+        String configFile = "load.json";
+        int cycles = 5;
+        for (int i = 0; i < args.length; i++) {
+            if ((StringUtils.equals(args[i], "--file") || StringUtils.equals(args[i], "-f")) && i + 1 < args.length) {
+                configFile = args[++i];
+            } else if ((StringUtils.equals(args[i], "--cycles") || StringUtils.equals(args[i], "-c")) && i + 1 < args.length) {
+                cycles = Integer.parseInt(args[++i]);
+            } else {
+                System.out.print("Usage: LoadHarness [--file|-f FILE] [--cycles|-c CYCLES]\n");
+                exit(1);
+            }
+        }
+
+        PluginLoader.loadPlugins();
+        Configuration config;
+        try (InputStream jsonStream = new FileInputStream(configFile)) {
+            config = JSONHelper.createBean(Configuration.class, jsonStream);
+        }
+        PluginLoader.initPlugins(config, new String[0]);
+        BandwidthLimiter.configure(config.getGeneral().getBandwidth());
+
+        List<SyncConnection> connections = getConnections(config);
+        // a load run is a single instance, the cluster configuration is ignored
+        ConnectionLeases leases = new ConnectionLeases(new ClusterConfiguration(), "load", false);
+        Tuning tuning = Tuning.detect(config.getGeneral());
+        SyncEngine engine = new SyncEngine(config.getGeneral(), tuning, leases);
+        ConnectionExecutor executor = new ConnectionExecutor(config.getGeneral(), tuning, engine.getOrder());
+        engine.warmUp(connections);
+        log.info("Running " + cycles + " cycles of " + connections.size() + " connections with " + tuning.getThreads() + " threads");
+
+        try {
+            for (int cycle = 1; cycle <= cycles; cycle++) {
+                if (cycle > 1) {
+                    SyntheticInputPlugin.nextCycle();
+                }
+                runCycle(cycle, config, connections, engine, executor);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void runCycle(int cycle, Configuration config, List<SyncConnection> connections, SyncEngine engine, ConnectionExecutor executor) {
+        LoadStatistics.reset();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        long[] gc = getCollections();
+        Map<SyncResult, LongAdder> results = new ConcurrentHashMap<>();
+
+        long start = System.nanoTime();
+        Deadline budget = Deadline.after(config.getGeneral().getBudget().getCycle());
+        executor.execute(connections, connection -> {
+            long syncStart = System.nanoTime();
+            SyncResult result = SyncResult.FAILED;
+            try {
+                result = engine.sync(connection, budget);
+                return result;
+            } finally {
+                LoadStatistics.record("sync", syncStart);
+                results.computeIfAbsent(result, key -> new LongAdder()).increment();
+            }
+        });
+        LoadStatistics.record("cycle", start);
+        long duration = (System.nanoTime() - start) / 1_000_000;
+        long[] gcAfter = getCollections();
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Cycle %d: %d ms, results %s%n", cycle, duration, new TreeMap<>(results)));
+        report.append(String.format("  remote calls %d, bytes moved %d (%.1f MB/s)%n", LoadStatistics.getCalls(),
+                LoadStatistics.getBytes(), duration > 0 ? LoadStatistics.getBytes() / 1e3 / duration : 0.0));
+        report.append(String.format("  heap used %d MB, peak %d MB, %d collections taking %d ms%n",
+                getHeapUsed() / (1024 * 1024), getHeapPeak() / (1024 * 1024), gcAfter[0] - gc[0], gcAfter[1] - gc[1]));
+        LoadStatistics.write(report);
+        System.out.print(report);
+    }
+
+    /**
+     * @return number & milliseconds of all garbage collections so far
+     */
+    private static long[] getCollections() {
+        long[] collections = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections[0] += Math.max(collector.getCollectionCount(), 0);
+            collections[1] += Math.max(collector.getCollectionTime(), 0);
+        }
+        return collections;
+    }
+
+    private static long getHeapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long getHeapPeak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static List<SyncConnection> getConnections(Configuration config) {
+        List<SyncConnection> connections = new ArrayList<>();
+        for (SyncConfiguration connectionConfig : config.getConnections()) {
+            connections.add(SyncConnectionImpl.bind(connectionConfig));
+        }
+        return connections;
+    }
+}
@@ -0,0 +1,91 @@
+package rocks.voss.musicsync.benchmarks.load;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of the measurements of a load run, the synthetic plugins record every remote call and the runner every
+ * sync & cycle. Latencies are kept as samples, so exact percentiles can be reported per cycle.
+ */
+public class LoadStatistics {
+    private static final Map<String, Samples> stages = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> calls = new ConcurrentSkipListMap<>();
+    private static final LongAdder bytes = new LongAdder();
+
+    /**
+     * Records the latency of a stage which started at the given {@link System#nanoTime()}
+     */
+    public static void record(String stage, long startNanos) {
+        stages.computeIfAbsent(stage, key -> new Samples()).add(System.nanoTime() - startNanos);
+    }
+
+    public static void call(String call) {
+        calls.computeIfAbsent(call, key -> new LongAdder()).increment();
+    }
+
+    public static void transferred(long count) {
+        bytes.add(count);
+    }
+
+    public static long getBytes() {
+        return bytes.sum();
+    }
+
+    public static long getCalls() {
+        long sum = 0;
+        for (LongAdder count : calls.values()) {
+            sum += count.sum();
+        }
+        return sum;
+    }
+
+    public static void reset() {
+        stages.clear();
+        calls.clear();
+        bytes.reset();
+    }
+
+    public static void write(StringBuilder out) {
+        out.append(String.format("  %-28s %8s %10s %10s %10s %10s%n", "stage", "count", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (Map.Entry<String, Samples> entry : stages.entrySet()) {
+            long[] samples = entry.getValue().sorted();
+            out.append(String.format("  %-28s %8d %10.1f %10.1f %10.1f %10.1f%n", entry.getKey(), samples.length,
+                    percentile(samples, 0.5), percentile(samples, 0.9), percentile(samples, 0.99), percentile(samples, 1)));
+        }
+        out.append(String.format("  %-28s %8s%n", "remote call", "count"));
+        for (Map.Entry<String, LongAdder> entry : calls.entrySet()) {
+            out.append(String.format("  %-28s %8d%n", entry.getKey(), entry.getValue().sum()));
+        }
+    }
+
+    /**
+     * @return milliseconds of the sample at the given share of the sorted samples, nearest rank
+     */
+    private static double percentile(long[] samples, double share) {
+        if (samples.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(share * samples.length);
+        return samples[Math.max(rank - 1, 0)] / 1e6;
+    }
+
+    private static class Samples {
+        private long[] values = new long[64];
+        private int size;
+
+        synchronized void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(values, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package rocks.voss.musicsync.benchmarks.load;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.PluginSchema;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncInputPlugin;
+import rocks.voss.musicsync.api.SyncTrack;
+import rocks.voss.musicsync.benchmarks.load.config.SyntheticInputConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Input which generates the configured number of tracks. Between two cycles of the load runner the configured share
+ * of the tracks is replaced by new tracks, chosen by a seeded random, so runs with the same configuration are
+ * comparable. Connections with the same input configuration get the same tracks, like connections sharing a playlist.
+ */
+@PluginSchema("synthetic")
+public class SyntheticInputPlugin implements SyncInputPlugin {
+    final private static Logger log = LogManager.getLogger(SyntheticInputPlugin.class);
+    private static final AtomicInteger cycle = new AtomicInteger();
+
+    private final Map<SyntheticInputConfiguration, Tracklist> tracklists = new ConcurrentHashMap<>();
+    private File workspace;
+
+    /**
+     * Starts the next cycle, the tracklists change by their churn on their next use
+     */
+    public static void nextCycle() {
+        cycle.incrementAndGet();
+    }
+
+    @Override
+    public List<SyncTrack> getTracklist(SyncConnection connection) {
+        SyntheticInputConfiguration config = connection.getInputConfig(SyntheticInputConfiguration.class);
+        long start = System.nanoTime();
+        LoadStatistics.call("input.tracklist");
+        try {
+            Thread.sleep(config.getLatency());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while listing tracks", e);
+        } finally {
+            LoadStatistics.record("input.tracklist", start);
+        }
+        return getTracklist(config).getTracks();
+    }
+
+    @Override
+    public String getTracklistFingerprint(SyncConnection connection) {
+        SyntheticInputConfiguration config = connection.getInputConfig(SyntheticInputConfiguration.class);
+        return Integer.toHexString(config.hashCode()) + ":" + getTracklist(config).getGeneration();
+    }
+
+    private Tracklist getTracklist(SyntheticInputConfiguration config) {
+        Tracklist tracklist = tracklists.computeIfAbsent(config, key -> new Tracklist(key, getWorkspace()));
+        tracklist.advance(cycle.get());
+        return tracklist;
+    }
+
+    private synchronized File getWorkspace() {
+        if (workspace == null) {
+            try {
+                workspace = Files.createTempDirectory("musicsync-load").toFile();
+                workspace.deleteOnExit();
+                log.info("Synthetic tracks are written to: " + workspace);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not create workspace for synthetic tracks", e);
+            }
+        }
+        return workspace;
+    }
+
+    @Override
+    public void establishConnection() {
+        return;
+    }
+
+    @Override
+    public void init(Object configuration) {
+        return;
+    }
+
+    @Override
+    public boolean parseArguments(String[] args) {
+        return true;
+    }
+
+    @Override
+    public String getSchema() {
+        return "synthetic";
+    }
+
+    @Override
+    public Class<?> getConnectionConfigurationClass() {
+        return SyntheticInputConfiguration.class;
+    }
+
+    @Override
+    public void validateConnectionConfiguration(Object configuration) {
+        SyntheticInputConfiguration config = (SyntheticInputConfiguration) configuration;
+        if (config.getTracks() < 0 || config.getChurn() < 0 || config.getChurn() > 1) {
+            throw new IllegalArgumentException("Tracks must not be negative, churn has to be between 0 and 1");
+        }
+    }
+
+    @Override
+    public void closeConnection() {
+        return;
+    }
+
+    @Override
+    public String helpScreen() {
+        return StringUtils.EMPTY;
+    }
+
+    private class Tracklist {
+        private final SyntheticInputConfiguration config;
+        private final File workspace;
+        private final Random random;
+        private final List<SyncTrack> tracks;
+        private int generation;
+        private long next;
+
+        Tracklist(SyntheticInputConfiguration config, File workspace) {
+            this.config = config;
+            this.workspace = workspace;
+            this.random = new Random(config.getSeed());
+            this.tracks = new ArrayList<>(config.getTracks());
+            this.generation = cycle.get();
+            for (int i = 0; i < config.getTracks(); i++) {
+                tracks.add(createTrack(i + 1));
+            }
+        }
+
+        synchronized void advance(int target) {
+            int replaced = (int) Math.round(config.getChurn() * tracks.size());
+            for (; generation < target; generation++) {
+                for (int i = 0; i < replaced; i++) {
+                    int position = random.nextInt(tracks.size());
+                    tracks.set(position, createTrack(position + 1));
+                }
+            }
+        }
+
+        synchronized List<SyncTrack> getTracks() {
+            return new ArrayList<>(tracks);
+        }
+
+        synchronized int getGeneration() {
+            return generation;
+        }
+
+        private SyncTrack createTrack(int trackNumber) {
+            // 22 characters like the track ids of Spotify, unique per input configuration
+            String id = String.format("%08x%014d", config.hashCode(), next++);
+            return new SyntheticTrack(SyntheticInputPlugin.this, id, trackNumber, config.getSize(), config.getDownload(), workspace);
+        }
+    }
+}
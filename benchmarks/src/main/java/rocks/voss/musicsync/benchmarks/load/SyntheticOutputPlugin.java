@@ -0,0 +1,225 @@
+package rocks.voss.musicsync.benchmarks.load;
+
+import org.apache.commons.lang3.StringUtils;
+import rocks.voss.musicsync.api.PluginSchema;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncException;
+import rocks.voss.musicsync.api.SyncOutputPlugin;
+import rocks.voss.musicsync.api.SyncPlan;
+import rocks.voss.musicsync.api.SyncTargetTrack;
+import rocks.voss.musicsync.api.SyncTrack;
+import rocks.voss.musicsync.benchmarks.load.config.SyntheticOutputConfiguration;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Output which keeps the uploaded tracks in memory and behaves like a remote service: every call waits for the
+ * configured latency plus a random jitter, uploads fail with the configured rate and take their size divided by the
+ * bandwidth and every change of the target is committed with the configured cost, like the commit of a tonie.
+ */
+@PluginSchema("synthetic")
+public class SyntheticOutputPlugin implements SyncOutputPlugin {
+    private final Map<String, Map<String, SyncTargetTrack>> targets = new ConcurrentHashMap<>();
+
+    @Override
+    public void uploadTracks(SyncConnection connection, List<SyncTrack> syncTracks) {
+        if (syncTracks.isEmpty()) {
+            return;
+        }
+        SyntheticOutputConfiguration config = getConfig(connection);
+        int uploaded = 0;
+        try {
+            for (SyncTrack syncTrack : syncTracks) {
+                upload(connection, config, syncTrack);
+                uploaded++;
+            }
+        } finally {
+            if (uploaded > 0) {
+                commit(config, syncTracks.get(uploaded - 1));
+            }
+        }
+    }
+
+    @Override
+    public void uploadTrack(SyncConnection connection, SyncTrack syncTrack) {
+        SyntheticOutputConfiguration config = getConfig(connection);
+        upload(connection, config, syncTrack);
+        commit(config, syncTrack);
+    }
+
+    private void upload(SyncConnection connection, SyntheticOutputConfiguration config, SyncTrack syncTrack) {
+        long size = new File(syncTrack.getPath()).length();
+        long transfer = config.getBandwidth() > 0 ? size * 1000 / config.getBandwidth() : 0;
+        try {
+            connection.getThrottle().acquire(size);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SyncException(syncTrack, "Interrupted while uploading track", e);
+        }
+        call("upload", config, transfer, syncTrack);
+        LoadStatistics.transferred(size);
+        getTargets(connection).put(getTrackKey(syncTrack), new SyncTargetTrack(getTrackKey(syncTrack), syncTrack.getTrackDuration(), size));
+    }
+
+    private void commit(SyntheticOutputConfiguration config, SyncTrack syncTrack) {
+        call("commit", config, config.getCommit(), syncTrack);
+    }
+
+    @Override
+    public boolean isTrackUploaded(SyncConnection connection, SyncTrack syncTrack) {
+        call("lookup", getConfig(connection), 0, null);
+        return getTargets(connection).containsKey(getTrackKey(syncTrack));
+    }
+
+    @Override
+    public void orderTracks(SyncConnection connection, List<SyncTrack> syncTracks) {
+        SyntheticOutputConfiguration config = getConfig(connection);
+        call("order", config, 0, null);
+        Map<String, SyncTargetTrack> target = getTargets(connection);
+        synchronized (target) {
+            Map<String, SyncTargetTrack> ordered = new LinkedHashMap<>();
+            for (SyncTrack syncTrack : syncTracks) {
+                SyncTargetTrack targetTrack = target.get(getTrackKey(syncTrack));
+                if (targetTrack != null) {
+                    ordered.put(targetTrack.getKey(), targetTrack);
+                }
+            }
+            ordered.putAll(target);
+            target.clear();
+            target.putAll(ordered);
+        }
+        commit(config, null);
+    }
+
+    @Override
+    public void cleanUpTracks(SyncConnection connection, List<SyncTrack> syncTracks) {
+        SyntheticOutputConfiguration config = getConfig(connection);
+        call("cleanup", config, 0, null);
+        Map<String, SyncTrack> trackIndex = new HashMap<>(syncTracks.size() * 2);
+        for (SyncTrack syncTrack : syncTracks) {
+            trackIndex.putIfAbsent(getTrackKey(syncTrack), syncTrack);
+        }
+        Map<String, SyncTargetTrack> target = getTargets(connection);
+        synchronized (target) {
+            target.keySet().removeIf(key -> trackIndex.get(key) == null || trackIndex.get(key).isFresh());
+        }
+        commit(config, null);
+    }
+
+    @Override
+    public List<SyncTargetTrack> getTargetTracks(SyncConnection connection) {
+        SyntheticOutputConfiguration config = getConfig(connection);
+        if (!config.isPlanned()) {
+            return null;
+        }
+        call("targets", config, 0, null);
+        Map<String, SyncTargetTrack> target = getTargets(connection);
+        synchronized (target) {
+            return new ArrayList<>(target.values());
+        }
+    }
+
+    @Override
+    public void applySyncPlan(SyncConnection connection, SyncPlan plan) {
+        if (plan.getToRemove().isEmpty() && !plan.isReorder()) {
+            return;
+        }
+        SyntheticOutputConfiguration config = getConfig(connection);
+        call("plan", config, 0, null);
+        Map<String, SyncTargetTrack> target = getTargets(connection);
+        synchronized (target) {
+            for (SyncTargetTrack targetTrack : plan.getToRemove()) {
+                target.remove(targetTrack.getKey());
+            }
+        }
+        if (plan.isReorder()) {
+            orderTracks(connection, plan.getUnchanged());
+        } else {
+            commit(config, null);
+        }
+    }
+
+    /**
+     * Simulates a call of the remote service
+     *
+     * @param duration milliseconds the call takes on top of the latency & jitter
+     * @param syncTrack uploaded by the call, the call fails with the failure rate. Other calls do not fail, like the
+     *                  plugins which log their errors instead of failing the connection
+     */
+    private void call(String call, SyntheticOutputConfiguration config, long duration, SyncTrack syncTrack) {
+        String stage = "output." + call;
+        long start = System.nanoTime();
+        LoadStatistics.call(stage);
+        try {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Thread.sleep(config.getLatency() + (config.getJitter() > 0 ? random.nextInt(config.getJitter() + 1) : 0) + duration);
+            if (syncTrack != null && random.nextDouble() < config.getFailureRate()) {
+                throw new SyncException(syncTrack, "Synthetic failure of " + call);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SyncException(syncTrack, "Interrupted while calling " + call, e);
+        } finally {
+            LoadStatistics.record(stage, start);
+        }
+    }
+
+    private Map<String, SyncTargetTrack> getTargets(SyncConnection connection) {
+        return targets.computeIfAbsent(connection.getName(), key -> Collections.synchronizedMap(new LinkedHashMap<>()));
+    }
+
+    private static SyntheticOutputConfiguration getConfig(SyncConnection connection) {
+        return connection.getOutputConfig(SyntheticOutputConfiguration.class);
+    }
+
+    @Override
+    public void establishConnection() {
+        return;
+    }
+
+    @Override
+    public void init(Object configuration) {
+        return;
+    }
+
+    @Override
+    public boolean parseArguments(String[] args) {
+        return true;
+    }
+
+    @Override
+    public String getSchema() {
+        return "synthetic";
+    }
+
+    @Override
+    public Class<?> getConnectionConfigurationClass() {
+        return SyntheticOutputConfiguration.class;
+    }
+
+    @Override
+    public void validateConnectionConfiguration(Object configuration) {
+        SyntheticOutputConfiguration config = (SyntheticOutputConfiguration) configuration;
+        if (config.getFailureRate() < 0 || config.getFailureRate() > 1) {
+            throw new IllegalArgumentException("Failure rate has to be between 0 and 1");
+        }
+    }
+
+    @Override
+    public void closeConnection() {
+        return;
+    }
+
+    @Override
+    public String helpScreen() {
+        return StringUtils.EMPTY;
+    }
+}
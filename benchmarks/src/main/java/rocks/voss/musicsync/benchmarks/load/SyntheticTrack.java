@@ -0,0 +1,108 @@
+package rocks.voss.musicsync.benchmarks.load;
+
+import rocks.voss.musicsync.api.SyncException;
+import rocks.voss.musicsync.api.SyncPlugin;
+import rocks.voss.musicsync.api.SyncTrack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Generated track of the synthetic input. Its file is created on first access with the configured size, the engine
+ * measures and uploads it like a downloaded track.
+ */
+public class SyntheticTrack implements SyncTrack {
+    private final SyncPlugin plugin;
+    private final String id;
+    private final int trackNumber;
+    private final long size;
+    private final int download;
+    private final File file;
+    private boolean materialized;
+
+    SyntheticTrack(SyncPlugin plugin, String id, int trackNumber, long size, int download, File workspace) {
+        this.plugin = plugin;
+        this.id = id;
+        this.trackNumber = trackNumber;
+        this.size = size;
+        this.download = download;
+        this.file = new File(workspace, id + ".mp3");
+    }
+
+    @Override
+    public synchronized String getPath() {
+        if (materialized) {
+            return file.getAbsolutePath();
+        }
+        long start = System.nanoTime();
+        LoadStatistics.call("input.download");
+        try {
+            Thread.sleep(download);
+            // sparse file, the size is what counts for the engine & the outputs
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.setLength(size);
+            }
+            file.deleteOnExit();
+            materialized = true;
+            return file.getAbsolutePath();
+        } catch (IOException e) {
+            throw new SyncException(this, "Could not create track file", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SyncException(this, "Interrupted while downloading track", e);
+        } finally {
+            LoadStatistics.record("input.download", start);
+        }
+    }
+
+    @Override
+    public SyncPlugin getPlugin() {
+        return plugin;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getUri() {
+        return "synthetic:" + id;
+    }
+
+    @Override
+    public String[] getArtists() {
+        return new String[]{"Synthetic Artist"};
+    }
+
+    @Override
+    public String getName() {
+        return "Synthetic track " + id;
+    }
+
+    @Override
+    public int getTrackNumber() {
+        return trackNumber;
+    }
+
+    @Override
+    public int getTrackDuration() {
+        return 180_000;
+    }
+
+    @Override
+    public String getAlbum() {
+        return "Synthetic";
+    }
+
+    @Override
+    public boolean isFresh() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "SyntheticTrack [id=" + id + ", trackNumber=" + trackNumber + "]";
+    }
+}
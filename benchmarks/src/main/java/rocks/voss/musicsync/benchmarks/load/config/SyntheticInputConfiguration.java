@@ -0,0 +1,14 @@
+package rocks.voss.musicsync.benchmarks.load.config;
+
+import lombok.Data;
+
+@Data
+public class SyntheticInputConfiguration {
+    private int tracks = 100;
+    // share of the tracks replaced by new tracks between two cycles
+    private double churn = 0.1;
+    private long size = 4 * 1024 * 1024;
+    private int latency = 0;
+    private int download = 0;
+    private long seed = 1;
+}
@@ -0,0 +1,15 @@
+package rocks.voss.musicsync.benchmarks.load.config;
+
+import lombok.Data;
+
+@Data
+public class SyntheticOutputConfiguration {
+    private int latency = 50;
+    private int jitter = 20;
+    // bytes per second of an upload, 0 for no transfer time
+    private long bandwidth = 0;
+    private double failureRate = 0;
+    private int commit = 200;
+    // lists the target tracks, so the engine syncs by a plan instead of asking for every track
+    private boolean planned = true;
+}
@@ -23,7 +23,6 @@ find $libs \
        -name '*commons-lang3*'  -exec mv {} $modules \; \
     -o -name '*commons-io*'  -exec mv {} $modules \; \
     -o -name '*lombok*'  -exec mv {} $modules \; \
-    -o -name '*reflections*' -exec mv {} $modules \; \
     -o -name '*log4j*' -exec mv {} $modules \; \
     -o -name '*jackson*2.13.0*' -exec mv {} $modules \; \
     -o -name '*jsonhelper*' -exec mv {} $modules \;
@@ -31,6 +30,9 @@ find $libs \
 cp $resources/musicsync $target
 chmod +x $target/musicsync
 
+cp $resources/cds.sh $target
+chmod +x $target/cds.sh
+
 cp $resources/sp $target
 chmod +x $target/sp
 
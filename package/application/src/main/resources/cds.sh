@@ -0,0 +1,143 @@
+#!/bin/bash
+#
+# Fast start for one-shot runs (timeout 0) with an AppCDS class-data archive
+#
+#   ./cds.sh train            creates musicsync.jsa, the musicsync launcher uses it automatically
+#   ./cds.sh benchmark [RUNS] compares the time to the first track list with and without musicsync.jsa
+#
+# The training syncs a folder with the local filesystem plugins, so it needs neither Spotify nor a Toniebox.
+# The archive therefore only covers the application and the filesystem plugins, the classes the Spotify & Toniebox
+# plugins load while syncing (HTTP clients, JSON binding) are still loaded from their JAR files.
+# Run the training again after updating the application, an outdated archive is ignored by the JVM.
+
+execdir=$(cd "$(dirname "$0")" && pwd)
+archive=$execdir/musicsync.jsa
+classlist=$execdir/musicsync.classlist
+
+workspace=$(mktemp -d)
+trap "rm -rf $workspace" EXIT
+
+mkdir -p $workspace/in $workspace/out
+# one second of silence, so ffprobe parses a valid file like in a real sync
+for track in 01_training 02_training 03_training; do
+    if command -v ffmpeg > /dev/null; then
+        ffmpeg -nostdin -v error -f lavfi -i anullsrc=r=44100:cl=stereo -t 1 -metadata title=$track -metadata artist=musicsync \
+            -metadata album=training $workspace/in/$track.mp3
+    else
+        head -c 65536 /dev/zero > $workspace/in/$track.mp3
+    fi
+done
+if ! command -v ffmpeg > /dev/null; then
+    echo "ffmpeg not found, training with invalid mp3 files, probing them fails"
+fi
+
+cat > $workspace/musicsync.json <<EOF
+{
+  "general": {
+    "timeout": 0,
+    "journal": {
+      "file": "$workspace/musicsync.journal"
+    }
+  },
+  "plugins": [],
+  "connections": [
+    {
+      "name": "training",
+      "in": {
+        "plugin": "filesystemin",
+        "config": {
+          "directory": "$workspace/in"
+        }
+      },
+      "out": {
+        "plugin": "filesystem",
+        "config": {
+          "directory": "$workspace/out"
+        }
+      }
+    }
+  ]
+}
+EOF
+
+cat > $workspace/log4j2.xml <<EOF
+<?xml version="1.0" encoding="UTF-8"?>
+<Configuration status="WARN">
+    <Appenders>
+        <Console name="Console" target="SYSTEM_OUT">
+            <PatternLayout pattern="%d{UNIX_MILLIS} [%t] %-5level %logger{36} - %msg%n"/>
+        </Console>
+    </Appenders>
+    <Loggers>
+        <Root level="ERROR">
+            <AppenderRef ref="Console"/>
+        </Root>
+        <Logger name="rocks.voss.musicsync.application.engine.SyncEngine" level="DEBUG" additivity="false">
+            <AppenderRef ref="Console"/>
+        </Logger>
+    </Loggers>
+</Configuration>
+EOF
+
+# one-shot run in the workspace, prints the milliseconds to the first track list and of the whole run
+run() {
+    rm -rf $workspace/musicsync.journal $workspace/out/*
+    local start=$(date +%s%3N)
+    local firstTracklist=$(cd $workspace && "$execdir/musicsync" 2>&1 | sed -n 's/^\([0-9]*\) .*Requesting track list of connection.*/\1/p' | head -n 1)
+    local end=$(date +%s%3N)
+    echo "$((${firstTracklist:-start} - start)) $((end - start))"
+}
+
+train() {
+    rm -f $archive $classlist
+    echo "Training run"
+    (cd $workspace && MUSICSYNC_CDS=off JAVA_OPTS="-Xshare:off -XX:DumpLoadedClassList=$classlist" "$execdir/musicsync" > /dev/null 2>&1)
+    if [ ! -s $classlist ]; then
+        echo "Training run did not load any classes"
+        exit 1
+    fi
+
+    echo "Creating $archive"
+    (cd $workspace && MUSICSYNC_CDS=off JAVA_OPTS="-Xshare:dump -XX:SharedClassListFile=$classlist -XX:SharedArchiveFile=$archive" "$execdir/musicsync" > /dev/null 2>&1)
+    rm -f $classlist
+    if [ ! -f $archive ]; then
+        echo "Could not create $archive"
+        exit 1
+    fi
+    echo "Done, archive has $(du -h $archive | cut -f1)"
+}
+
+benchmark() {
+    local runs=${1:-5}
+    if [ ! -f $archive ]; then
+        echo "$archive does not exist, run ./cds.sh train first"
+        exit 1
+    fi
+
+    for mode in off on; do
+        local sumFirst=0
+        local sumTotal=0
+        for i in $(seq $runs); do
+            local result=$(MUSICSYNC_CDS=$mode run)
+            local first=${result% *}
+            local total=${result#* }
+            echo "cds $mode, run $i: first track list after $first ms, done after $total ms"
+            sumFirst=$((sumFirst + first))
+            sumTotal=$((sumTotal + total))
+        done
+        echo "cds $mode, average: first track list after $((sumFirst / runs)) ms, done after $((sumTotal / runs)) ms"
+    done
+}
+
+case "$1" in
+    train)
+        train
+        ;;
+    benchmark)
+        benchmark $2
+        ;;
+    *)
+        echo "Usage: $0 train|benchmark [RUNS]"
+        exit 1
+        ;;
+esac
@@ -8,4 +8,6 @@ open module rocks.voss.musicsync.plugins.filesystem {
     uses rocks.voss.musicsync.api.SyncOutputPlugin;
     uses rocks.voss.musicsync.api.SyncTrack;
     uses rocks.voss.musicsync.api.SyncConnection;
+
+    provides rocks.voss.musicsync.api.SyncOutputPlugin with rocks.voss.musicsync.plugins.filesystem.FilesystemPlugin;
 }
@@ -4,18 +4,35 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import rocks.voss.jsonhelper.JSONHelper;
+import rocks.voss.musicsync.api.PluginSchema;
 import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncException;
 import rocks.voss.musicsync.api.SyncOutputPlugin;
+import rocks.voss.musicsync.api.SyncPlan;
+import rocks.voss.musicsync.api.SyncTargetTrack;
+import rocks.voss.musicsync.api.SyncThrottle;
 import rocks.voss.musicsync.api.SyncTrack;
 import rocks.voss.musicsync.plugins.filesystem.config.PluginConfiguration;
 import rocks.voss.musicsync.plugins.filesystem.config.SyncConfiguration;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+@PluginSchema("filesystem")
 public class FilesystemPlugin implements SyncOutputPlugin {
     final private static Logger log = LogManager.getLogger(FilesystemPlugin.class);
+    final private static int BUFFER_SIZE = 64 * 1024;
     private String directory;
 
     @Override
@@ -32,28 +49,38 @@ public class FilesystemPlugin implements SyncOutputPlugin {
 
     @Override
     public void uploadTrack(SyncConnection connection, SyncTrack syncTrack) {
+        File source = new File(syncTrack.getPath());
+        File target = new File(getOutputPath(connection), getFilename(syncTrack));
+        log.info("Copying: " + getFilename(syncTrack));
         try {
-            String outputPath = getOutputPath(connection);
-            log.info("Copying: " + getFilename(syncTrack));
-            Runtime rt = Runtime.getRuntime();
-            StringBuilder command = new StringBuilder();
-            command.append("cp ")
-                    .append("\"")
-                    .append(syncTrack.getPath())
-                    .append("\" \"")
-                    .append(outputPath)
-                    .append("/")
-                    .append(getFilename(syncTrack))
-                    .append("\"");
-
-            String[] commands = {"/bin/bash", "-c", command.toString()};
-            log.debug("Executing: " + command.toString());
-
-            rt.exec(commands).waitFor();
-            log.debug("Execution done");
-        } catch (Exception e) {
-            log.error("Exception", e);
+            copy(source, target, connection.getThrottle());
+            log.debug("Copied " + source.getAbsolutePath() + " to " + target.getAbsolutePath());
+        } catch (IOException e) {
+            throw new SyncException(syncTrack, "Could not copy track", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SyncException(syncTrack, "Interrupted while copying track", e);
+        }
+    }
+
+    /**
+     * Copies the file chunk by chunk within the bandwidth of the output. The copy is written next to the target and
+     * renamed once it is complete, so an interrupted copy is never taken for an uploaded track.
+     */
+    private void copy(File source, File target, SyncThrottle throttle) throws IOException, InterruptedException {
+        File part = new File(target.getParentFile(), target.getName() + ".part");
+        try (InputStream in = new FileInputStream(source); OutputStream out = new FileOutputStream(part)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                throttle.acquire(read);
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException | InterruptedException e) {
+            part.delete();
+            throw e;
         }
+        Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
     @Override
@@ -78,22 +105,26 @@ public class FilesystemPlugin implements SyncOutputPlugin {
         return;
     }
 
+    @Override
+    public boolean canOrderTracks() {
+        // the file names start with the track number, a track which moved gets a new file
+        return false;
+    }
+
     @Override
     public void cleanUpTracks(SyncConnection connection, List<SyncTrack> syncTracks) {
         try {
             String outputPath = getOutputPath(connection);
 
+            Map<String, SyncTrack> trackIndex = new HashMap<>(syncTracks.size() * 2);
+            for (SyncTrack syncTrack : syncTracks) {
+                trackIndex.putIfAbsent(getFilename(syncTrack), syncTrack);
+            }
+
             File dir = new File(outputPath);
             File[] files = dir.listFiles((directory, dirFile) -> {
-                for (SyncTrack syncTrack : syncTracks) {
-                    if (StringUtils.equals(dirFile, getFilename(syncTrack))) {
-                        if (syncTrack.isFresh()) {
-                            return true;
-                        }
-                        return false;
-                    }
-                }
-                return true;
+                SyncTrack syncTrack = trackIndex.get(dirFile);
+                return syncTrack == null || syncTrack.isFresh();
             });
 
             if (files != null) {
@@ -106,6 +137,37 @@ public class FilesystemPlugin implements SyncOutputPlugin {
         }
     }
 
+    @Override
+    public List<SyncTargetTrack> getTargetTracks(SyncConnection connection) {
+        File[] files = new File(getOutputPath(connection)).listFiles(File::isFile);
+        if (files == null) {
+            return new ArrayList<>(0);
+        }
+        // filenames start with the track number, so name order is track order
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        List<SyncTargetTrack> targetTracks = new ArrayList<>(files.length);
+        for (File file : files) {
+            targetTracks.add(new SyncTargetTrack(file.getName(), -1, file));
+        }
+        return targetTracks;
+    }
+
+    @Override
+    public String getTrackKey(SyncTrack syncTrack) {
+        return getFilename(syncTrack);
+    }
+
+    @Override
+    public void applySyncPlan(SyncConnection connection, SyncPlan plan) {
+        for (SyncTargetTrack targetTrack : plan.getToRemove()) {
+            File file = (File) targetTrack.getTarget();
+            log.info("Removing: " + file.getName());
+            if (!file.delete()) {
+                log.error("Could not remove: " + file.getAbsolutePath());
+            }
+        }
+    }
+
     @Override
     public void establishConnection() {
         return;
@@ -127,6 +189,18 @@ public class FilesystemPlugin implements SyncOutputPlugin {
         return "filesystem";
     }
 
+    @Override
+    public Class<?> getConnectionConfigurationClass() {
+        return SyncConfiguration.class;
+    }
+
+    @Override
+    public void validateConnectionConfiguration(Object configuration) {
+        if (((SyncConfiguration) configuration).getDirectory() == null && directory == null) {
+            throw new IllegalArgumentException("No directory configured");
+        }
+    }
+
     @Override
     public void closeConnection() {
         return;
@@ -144,13 +218,9 @@ public class FilesystemPlugin implements SyncOutputPlugin {
     }
 
     private String getOutputPath(SyncConnection connection) {
-        try {
-            SyncConfiguration syncConfiguration = JSONHelper.createBean(SyncConfiguration.class, connection.getOutputConfig());
-            if (syncConfiguration.getDirectory() != null) {
-                return syncConfiguration.getDirectory();
-            }
-        } catch (IOException e) {
-            log.error(e);
+        SyncConfiguration syncConfiguration = connection.getOutputConfig(SyncConfiguration.class);
+        if (syncConfiguration.getDirectory() != null) {
+            return syncConfiguration.getDirectory();
         }
         return directory;
     }
@@ -8,4 +8,6 @@ open module rocks.voss.musicsync.plugins.filesystemin {
     uses rocks.voss.musicsync.api.SyncInputPlugin;
     uses rocks.voss.musicsync.api.SyncTrack;
     uses rocks.voss.musicsync.api.SyncConnection;
+
+    provides rocks.voss.musicsync.api.SyncInputPlugin with rocks.voss.musicsync.plugins.filesystemin.FilesystemInPlugin;
 }
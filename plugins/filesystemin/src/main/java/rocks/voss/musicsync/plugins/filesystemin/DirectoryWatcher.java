@@ -0,0 +1,131 @@
+package rocks.voss.musicsync.plugins.filesystemin;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncTrigger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches the input folders of the connections and triggers a sync of a connection once its folder did not change
+ * for the debounce time, so copying a whole album results in a single sync.
+ */
+public class DirectoryWatcher {
+    final private static Logger log = LogManager.getLogger(DirectoryWatcher.class);
+
+    private final long debounce;
+    private final WatchService watchService;
+    private final ScheduledExecutorService debouncer;
+    private final Map<WatchKey, List<Watch>> watches = new HashMap<>();
+
+    public DirectoryWatcher(long debounce) throws IOException {
+        this.debounce = debounce;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.debouncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "filesystemin-debounce");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Thread thread = new Thread(this::run, "filesystemin-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void watch(Path directory, SyncConnection connection, SyncTrigger trigger) throws IOException {
+        WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        watches.computeIfAbsent(key, k -> new ArrayList<>()).add(new Watch(connection, trigger));
+        log.info("Watching folder " + directory + " for connection: " + connection.getName());
+    }
+
+    public synchronized void unwatch(SyncConnection connection) {
+        Iterator<Map.Entry<WatchKey, List<Watch>>> iterator = watches.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<WatchKey, List<Watch>> entry = iterator.next();
+            entry.getValue().removeIf(watch -> watch.cancel(connection));
+            if (entry.getValue().isEmpty()) {
+                entry.getKey().cancel();
+                iterator.remove();
+                log.info("Stop watching folder " + entry.getKey().watchable());
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                // events are not evaluated one by one, any change (incl. overflow) leads to a sync
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    log.debug("Event " + event.kind() + " on " + key.watchable() + ": " + event.context());
+                }
+                synchronized (this) {
+                    for (Watch watch : watches.getOrDefault(key, List.of())) {
+                        watch.changed();
+                    }
+                }
+                if (!key.reset()) {
+                    log.error("Folder is not accessible anymore, stop watching: " + key.watchable());
+                    synchronized (this) {
+                        watches.remove(key);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("Stop watching folders");
+        }
+    }
+
+    private class Watch {
+        private final SyncConnection connection;
+        private final SyncTrigger trigger;
+        private ScheduledFuture<?> pending;
+
+        Watch(SyncConnection connection, SyncTrigger trigger) {
+            this.connection = connection;
+            this.trigger = trigger;
+        }
+
+        void changed() {
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            pending = debouncer.schedule(this::fire, debounce, TimeUnit.MILLISECONDS);
+        }
+
+        boolean cancel(SyncConnection connection) {
+            if (this.connection != connection) {
+                return false;
+            }
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            return true;
+        }
+
+        private void fire() {
+            log.info("Input folder changed, triggering connection: " + connection.getName());
+            trigger.trigger(connection);
+        }
+    }
+}
@@ -1,15 +1,18 @@
 package rocks.voss.musicsync.plugins.filesystemin;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import rocks.voss.musicsync.api.ProcessResult;
+import rocks.voss.musicsync.api.ProcessRunner;
 import rocks.voss.musicsync.api.SyncPlugin;
 import rocks.voss.musicsync.api.SyncTrack;
 
@@ -31,11 +34,12 @@ public class FileSyncTrack implements SyncTrack {
         this.fileName = file.getName();
         this.filePath = file.getAbsolutePath();
         this.uri = file.toURI().toString();
-        this.artist = getArtist(file);
-        this.title = getTitle(file);
-        this.album = getAlbumName(file);
+        Map<String, String> info = getInfo(file);
+        this.artist = info.getOrDefault("tag:artist", "");
+        this.title = getTitle(file, info.get("tag:title"));
+        this.album = info.getOrDefault("tag:album", "");
         this.trackNumber = trackNumber;
-        this.trackDuration = (int) getDuration(file);
+        this.trackDuration = (int) getDuration(info.get("duration"));
     }
 
     @Override
@@ -44,32 +48,38 @@ public class FileSyncTrack implements SyncTrack {
                 + ", trackNumber=" + trackNumber + ", artist=" + artist + ", title=" + title + ", album=" + album + "]";
     }
 
-    private String getInfo(File file, String info) {
+    /**
+     * Probes duration & tags of the file with a single run of ffprobe
+     *
+     * @return values by their lower case key, e.g. "duration" or "tag:title", empty if the probe failed
+     */
+    private Map<String, String> getInfo(File file) {
+        Map<String, String> info = new HashMap<>();
         try {
-            ProcessBuilder processBuilder = new ProcessBuilder("/bin/bash", "-c", "ffprobe -v error -show_entries "
-                    + info + " -of default=noprint_wrappers=1:nokey=1 '" + file.getAbsolutePath() + "'");
-            processBuilder.redirectErrorStream(true);
-            log.debug("Executing: " + processBuilder.command().toString());
-            Process process = processBuilder.start();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String stdout = reader.readLine();
-            int exitCode = process.waitFor();
-            if (exitCode == 0) {
-                log.debug("Exit code: " + exitCode + ", Output: " + stdout);
-                return stdout;
-
-            } else {
-                log.error("Execution failed '" + processBuilder.command().toString() + "': Exit code " + exitCode
-                        + "; Output: " + stdout);
+            ProcessResult result = ProcessRunner.run(getId(), "ffprobe", "-v", "error", "-show_entries",
+                    "format=duration:format_tags=artist,title,album", "-of", "default=noprint_wrappers=1", file.getAbsolutePath());
+            if (!result.isSuccess()) {
+                log.error("Execution of ffprobe failed for '" + file.getAbsolutePath() + "': "
+                        + (result.isTimedOut() ? "Timed out" : "Exit code " + result.getExitCode()) + "; Output: " + result.getStderr());
+                return info;
             }
-        } catch (IOException | InterruptedException e) {
+            log.debug("Probed " + file.getAbsolutePath() + " in " + result.getDuration() + " ms, Output: " + result.getStdout());
+            for (String line : result.getStdout().split("\\R")) {
+                int separator = line.indexOf('=');
+                if (separator > 0 && StringUtils.isNotEmpty(line.substring(separator + 1))) {
+                    info.putIfAbsent(line.substring(0, separator).toLowerCase(Locale.ROOT), line.substring(separator + 1));
+                }
+            }
+        } catch (IOException e) {
+            log.error("Excecution failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             log.error("Excecution failed", e);
         }
-        return null;
+        return info;
     }
 
-    private double getDuration(File file) {
-        String info = getInfo(file, "format=duration");
+    private double getDuration(String info) {
         double duration = 0;
         if (info != null) {
             try {
@@ -81,16 +91,7 @@ public class FileSyncTrack implements SyncTrack {
         return duration;
     }
 
-    private String getAlbumName(File file) {
-        String info = getInfo(file, "format_tags=album");
-        if (info != null) {
-            return info;
-        }
-        return "";
-    }
-
-    private String getTitle(File file) {
-        String info = getInfo(file, "format_tags=title");
+    private String getTitle(File file, String info) {
         if (info != null) {
             return info;
         }
@@ -104,14 +105,6 @@ public class FileSyncTrack implements SyncTrack {
         return name;
     }
 
-    private String getArtist(File file) {
-        String info = getInfo(file, "format_tags=artist");
-        if (info != null) {
-            return info;
-        }
-        return "";
-    }
-
     @Override
     public SyncPlugin getPlugin() {
         return this.plugin;
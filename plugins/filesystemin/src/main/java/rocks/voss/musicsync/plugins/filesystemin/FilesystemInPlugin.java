@@ -2,8 +2,12 @@ package rocks.voss.musicsync.plugins.filesystemin;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
@@ -11,16 +15,23 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import rocks.voss.jsonhelper.JSONHelper;
+import rocks.voss.musicsync.api.PluginSchema;
+import rocks.voss.musicsync.api.ProcessRunner;
 import rocks.voss.musicsync.api.SyncConnection;
 import rocks.voss.musicsync.api.SyncInputPlugin;
 import rocks.voss.musicsync.api.SyncTrack;
+import rocks.voss.musicsync.api.SyncTrigger;
 import rocks.voss.musicsync.plugins.filesystemin.config.PluginConfiguration;
 import rocks.voss.musicsync.plugins.filesystemin.config.SyncConfiguration;
 
+@PluginSchema("filesystemin")
 public class FilesystemInPlugin implements SyncInputPlugin {
 
     final private static Logger log = LogManager.getLogger(FilesystemInPlugin.class);
     private String directory;
+    private boolean watch;
+    private long debounce;
+    private DirectoryWatcher watcher;
 
     @Override
     public String helpScreen() {
@@ -36,6 +47,9 @@ public class FilesystemInPlugin implements SyncInputPlugin {
     public void init(Object configuration) throws Exception {
         PluginConfiguration pluginConfiguration = JSONHelper.createBean(PluginConfiguration.class, configuration);
         directory = pluginConfiguration.getDirectory();
+        watch = pluginConfiguration.isWatch();
+        debounce = pluginConfiguration.getDebounce();
+        ProcessRunner.configure("ffprobe", pluginConfiguration.getProbeConcurrency(), pluginConfiguration.getProbeTimeout());
     }
 
     @Override
@@ -48,6 +62,18 @@ public class FilesystemInPlugin implements SyncInputPlugin {
         return "filesystemin";
     }
 
+    @Override
+    public Class<?> getConnectionConfigurationClass() {
+        return SyncConfiguration.class;
+    }
+
+    @Override
+    public void validateConnectionConfiguration(Object configuration) {
+        if (((SyncConfiguration) configuration).getDirectory() == null && directory == null) {
+            throw new IllegalArgumentException("No directory configured");
+        }
+    }
+
     @Override
     public void closeConnection() {
         return;
@@ -81,15 +107,53 @@ public class FilesystemInPlugin implements SyncInputPlugin {
         return tracks;
     }
 
-    private String getInputPath(SyncConnection connection) {
+    @Override
+    public String getTracklistFingerprint(SyncConnection connection) {
+        File[] files = new File(getInputPath(connection)).listFiles(file -> file.isFile() && file.getName().endsWith(".mp3"));
+        if (files == null) {
+            return null;
+        }
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
         try {
-            SyncConfiguration syncConfiguration = JSONHelper.createBean(SyncConfiguration.class,
-                    connection.getInputConfig());
-            if (syncConfiguration.getDirectory() != null) {
-                return syncConfiguration.getDirectory();
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (File file : files) {
+                digest.update((file.getName() + "\t" + file.length() + "\t" + file.lastModified() + "\n").getBytes(StandardCharsets.UTF_8));
             }
-        } catch (IOException e) {
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
             log.error(e);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized boolean watch(SyncConnection connection, SyncTrigger trigger) {
+        if (!watch) {
+            return false;
+        }
+        try {
+            if (watcher == null) {
+                watcher = new DirectoryWatcher(debounce);
+            }
+            watcher.watch(new File(getInputPath(connection)).toPath(), connection, trigger);
+            return true;
+        } catch (IOException e) {
+            log.error("Could not watch input folder of connection " + connection.getName() + ", falling back to polling", e);
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void unwatch(SyncConnection connection) {
+        if (watcher != null) {
+            watcher.unwatch(connection);
+        }
+    }
+
+    private String getInputPath(SyncConnection connection) {
+        SyncConfiguration syncConfiguration = connection.getInputConfig(SyncConfiguration.class);
+        if (syncConfiguration.getDirectory() != null) {
+            return syncConfiguration.getDirectory();
         }
         return directory;
     }
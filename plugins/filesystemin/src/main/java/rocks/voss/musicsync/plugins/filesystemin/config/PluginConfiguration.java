@@ -5,4 +5,10 @@ import lombok.Data;
 @Data
 public class PluginConfiguration {
     private String directory;
+    private boolean watch = false;
+    private long debounce = 2000;
+    // ffprobe processes running at the same time, shared by all connections
+    private int probeConcurrency = 4;
+    // milliseconds ffprobe may take per file before it is killed, 0 = no timeout
+    private long probeTimeout = 30000;
 }
@@ -18,6 +18,8 @@ open module rocks.voss.musicsync.plugins.spotify {
     uses rocks.voss.musicsync.api.SyncTrack;
     uses rocks.voss.musicsync.api.SyncConnection;
 
+    provides rocks.voss.musicsync.api.SyncInputPlugin with rocks.voss.musicsync.plugins.spotify.SpotifyPlugin;
+
     exports rocks.voss.musicsync.plugins.spotify;
     exports rocks.voss.musicsync.plugins.spotify.config;
 }
@@ -0,0 +1,57 @@
+package rocks.voss.musicsync.plugins.spotify;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.ParseException;
+import se.michaelthelin.spotify.IHttpManager;
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Sends the requests of the Web API and of the accounts service to another base URI, e.g. a local stand-in to test and
+ * profile the plugin without a Spotify account. Only scheme, host & port are replaced, a path of the base URI is put in
+ * front of the path of the request.
+ */
+public class BaseUriHttpManager implements IHttpManager {
+    private final URI baseUri;
+    private final IHttpManager httpManager;
+
+    public BaseUriHttpManager(URI baseUri, IHttpManager httpManager) {
+        this.baseUri = baseUri;
+        this.httpManager = httpManager;
+    }
+
+    @Override
+    public String get(URI uri, Header[] headers) throws IOException, SpotifyWebApiException, ParseException {
+        return httpManager.get(rewrite(uri), headers);
+    }
+
+    @Override
+    public String post(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException, ParseException {
+        return httpManager.post(rewrite(uri), headers, body);
+    }
+
+    @Override
+    public String put(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException, ParseException {
+        return httpManager.put(rewrite(uri), headers, body);
+    }
+
+    @Override
+    public String delete(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException, ParseException {
+        return httpManager.delete(rewrite(uri), headers, body);
+    }
+
+    private URI rewrite(URI uri) {
+        StringBuilder rewritten = new StringBuilder();
+        rewritten.append(baseUri.getScheme()).append("://").append(baseUri.getRawAuthority());
+        rewritten.append(StringUtils.removeEnd(StringUtils.defaultString(baseUri.getRawPath()), "/"));
+        rewritten.append(uri.getRawPath());
+        if (uri.getRawQuery() != null) {
+            rewritten.append('?').append(uri.getRawQuery());
+        }
+        return URI.create(rewritten.toString());
+    }
+}
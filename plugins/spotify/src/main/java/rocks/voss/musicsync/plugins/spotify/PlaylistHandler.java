@@ -37,10 +37,21 @@ public class PlaylistHandler {
 
     public static List<PlaylistTrack> getTracks(PluginConfiguration spotifyHandler, PlaylistSimplified playlist)
             throws IOException, SpotifyWebApiException, ParseException {
+        int offset = 0;
+        int limit = 100;
         List<PlaylistTrack> tracks = new ArrayList<>();
-        GetPlaylistsItemsRequest getPlaylistsItemsRequest = spotifyHandler.getSpotifyApi().getPlaylistsItems(playlist.getId()).build();
-        Paging<PlaylistTrack> playlistTrackPaging = getPlaylistsItemsRequest.execute();
-        tracks.addAll(Arrays.asList(playlistTrackPaging.getItems()));
+        Paging<PlaylistTrack> playlistTrackPaging;
+        do {
+            GetPlaylistsItemsRequest getPlaylistsItemsRequest = spotifyHandler.getSpotifyApi()
+                    .getPlaylistsItems(playlist.getId())
+                    .limit(limit)
+                    .offset(offset)
+                    .build();
+
+            playlistTrackPaging = getPlaylistsItemsRequest.execute();
+            tracks.addAll(Arrays.asList(playlistTrackPaging.getItems()));
+            offset += limit;
+        } while (offset < playlistTrackPaging.getTotal());
         return tracks;
     }
 }
@@ -6,6 +6,8 @@ import org.apache.hc.core5.http.ParseException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import rocks.voss.jsonhelper.JSONHelper;
+import rocks.voss.musicsync.api.PluginSchema;
+import rocks.voss.musicsync.api.ProcessRunner;
 import rocks.voss.musicsync.api.SyncConnection;
 import rocks.voss.musicsync.api.SyncInputPlugin;
 import rocks.voss.musicsync.api.SyncTrack;
@@ -16,11 +18,13 @@ import se.michaelthelin.spotify.model_objects.specification.PlaylistSimplified;
 import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 
 import static java.lang.System.exit;
 
+@PluginSchema("spotify")
 public class SpotifyPlugin implements SyncInputPlugin {
     final private static Logger log = LogManager.getLogger(SpotifyPlugin.class);
 
@@ -44,6 +48,13 @@ public class SpotifyPlugin implements SyncInputPlugin {
     public void init(Object configuration) {
         try {
             pluginConfiguration = JSONHelper.createBean(PluginConfiguration.class, configuration);
+            URI baseUri = pluginConfiguration.getBaseUri();
+            if (baseUri != null && StringUtils.isBlank(baseUri.toString())) {
+                pluginConfiguration.setBaseUri(null);
+            } else if (baseUri != null && baseUri.getHost() == null) {
+                throw new IllegalArgumentException("Invalid baseUri, scheme & host are required: " + baseUri);
+            }
+            ProcessRunner.configure("stream_recorder.pl", pluginConfiguration.getRecorderConcurrency(), 0);
         } catch (IOException e) {
             log.error(e);
         }
@@ -91,7 +102,7 @@ public class SpotifyPlugin implements SyncInputPlugin {
         List<SyncTrack> syncTracks = new ArrayList<>();
 
         try {
-            SyncConfiguration syncConfig = JSONHelper.createBean(SyncConfiguration.class, connection.getInputConfig());
+            SyncConfiguration syncConfig = connection.getInputConfig(SyncConfiguration.class);
 
             List<PlaylistSimplified> playlists = PlaylistHandler.getPlaylists(pluginConfiguration);
             for (PlaylistSimplified playlist : playlists) {
@@ -112,11 +123,38 @@ public class SpotifyPlugin implements SyncInputPlugin {
         return syncTracks;
     }
 
+    @Override
+    public String getTracklistFingerprint(SyncConnection connection) {
+        try {
+            SyncConfiguration syncConfig = connection.getInputConfig(SyncConfiguration.class);
+            for (PlaylistSimplified playlist : PlaylistHandler.getPlaylists(pluginConfiguration)) {
+                if (StringUtils.equals(playlist.getUri(), syncConfig.getUri())) {
+                    return playlist.getSnapshotId();
+                }
+            }
+        } catch (Exception e) {
+            log.error("Exception", e);
+        }
+        return null;
+    }
+
     @Override
     public String getSchema() {
         return "spotify";
     }
 
+    @Override
+    public Class<?> getConnectionConfigurationClass() {
+        return SyncConfiguration.class;
+    }
+
+    @Override
+    public void validateConnectionConfiguration(Object configuration) {
+        if (StringUtils.isBlank(((SyncConfiguration) configuration).getUri())) {
+            throw new IllegalArgumentException("No playlist uri configured");
+        }
+    }
+
     @Override
     public void closeConnection() {
         return;
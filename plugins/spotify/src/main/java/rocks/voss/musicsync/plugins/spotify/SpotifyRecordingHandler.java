@@ -2,6 +2,8 @@ package rocks.voss.musicsync.plugins.spotify;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.ProcessResult;
+import rocks.voss.musicsync.api.ProcessRunner;
 import rocks.voss.musicsync.plugins.spotify.config.PluginConfiguration;
 import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
 
@@ -28,26 +30,30 @@ public class SpotifyRecordingHandler {
             return false;
         } else {
             log.debug("File is not valid: " + fileDestination.getAbsolutePath());
-            downloadFile(spotifyHandler, track, fileDestination.getName());
+            downloadFile(spotifyHandler, track, fileDestination);
             return true;
         }
     }
 
-    private static void downloadFile(PluginConfiguration spotifyHandler, PlaylistTrack track, String filename) throws InterruptedException, IOException {
+    private static void downloadFile(PluginConfiguration spotifyHandler, PlaylistTrack track, File fileDestination) throws InterruptedException, IOException {
         log.info("Downloading: " + track.getTrack().getUri());
-        Runtime rt = Runtime.getRuntime();
-        StringBuilder command = new StringBuilder();
-        command.append("stream_recorder.pl --uri '")
-                .append(track.getTrack().getUri())
-                .append("' --silent --format mp3 --outdir ")
-                .append(spotifyHandler.getCachePath())
-                .append(" --filename ")
-                .append(filename);
-
-        String[] commands = {"/bin/bash", "-c", command.toString()};
-        log.debug("Executing: " + command.toString());
-        rt.exec(commands).waitFor();
-        log.debug("Execution done");
+        // the track is recorded while it plays, so it takes at least as long as the track
+        long timeout = spotifyHandler.getRecorderTimeout() > 0 ? track.getTrack().getDurationMs() + spotifyHandler.getRecorderTimeout() : 0;
+        String[] command = {"stream_recorder.pl", "--uri", track.getTrack().getUri(), "--silent", "--format", "mp3",
+                "--outdir", spotifyHandler.getCachePath(), "--filename", fileDestination.getName()};
+        log.debug("Executing: " + String.join(" ", command));
+        ProcessResult result = ProcessRunner.run(track.getTrack().getId(), timeout, fileDestination, command);
+        log.debug("Execution done in " + result.getDuration() + " ms, waited " + result.getQueued() + " ms");
+        if (result.isTimedOut()) {
+            fileDestination.delete();
+            throw new IOException("stream_recorder.pl timed out after " + timeout + " ms");
+        }
+        if (result.getExitCode() != 0) {
+            throw new IOException("stream_recorder.pl failed with exit code " + result.getExitCode() + ": " + result.getStderr());
+        }
+        if (!fileDestination.isFile()) {
+            throw new IOException("stream_recorder.pl did not create " + fileDestination.getAbsolutePath());
+        }
     }
 
     public static boolean isFileValid(PluginConfiguration spotifyHandler, PlaylistTrack track, File file) {
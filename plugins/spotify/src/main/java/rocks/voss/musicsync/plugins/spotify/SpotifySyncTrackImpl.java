@@ -4,6 +4,7 @@ import lombok.Data;
 import org.apache.hc.core5.http.ParseException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncException;
 import rocks.voss.musicsync.api.SyncPlugin;
 import rocks.voss.musicsync.api.SyncTrack;
 import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
@@ -71,8 +72,11 @@ public class SpotifySyncTrackImpl implements SyncTrack {
         File fileDestination = getFileDestination(spotifyInputPlugin);
         try {
             fresh = SpotifyRecordingHandler.recordTrack(spotifyInputPlugin.getPluginConfiguration(), spotifyTrack, fileDestination);
-        } catch (IOException | InterruptedException e) {
-            log.error(e);
+        } catch (IOException e) {
+            throw new SyncException(this, "Could not download track", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SyncException(this, "Interrupted while downloading track", e);
         }
         return fileDestination.getAbsolutePath();
     }
@@ -3,7 +3,10 @@ package rocks.voss.musicsync.plugins.spotify.config;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import org.apache.commons.lang3.StringUtils;
+import rocks.voss.musicsync.plugins.spotify.BaseUriHttpManager;
+import se.michaelthelin.spotify.IHttpManager;
 import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.SpotifyHttpManager;
 import se.michaelthelin.spotify.requests.authorization.authorization_code.AuthorizationCodeRequest;
 
 import java.net.URI;
@@ -13,10 +16,18 @@ public class PluginConfiguration {
     private String clientId;
     private String clientSecret;
     private URI redirectUri;
+    // e.g. a local stand-in of the Web API & the accounts service, empty = Spotify
+    private URI baseUri;
     private String accessToken;
     private String refreshToken;
     private String cachePath;
     private int trackThreshold = 1000;
+    // recordings running at the same time, the account plays one track at a time
+    private int recorderConcurrency = 1;
+    // milliseconds a recording may take longer than its track before it is killed, 0 = no timeout
+    private long recorderTimeout = 120000;
+    // milliseconds to connect to & to wait for a response of the Web API, 0 = no timeout
+    private int httpTimeout = 30000;
 
     @JsonIgnore
     private SpotifyApi spotifyApi = null;
@@ -37,6 +48,15 @@ public class PluginConfiguration {
             if (StringUtils.isNotBlank(refreshToken)) {
                 builder.setRefreshToken(refreshToken);
             }
+            // a read without timeout keeps the connection running even after the interrupt of its timeout
+            IHttpManager httpManager = new SpotifyHttpManager.Builder()
+                    .setConnectTimeout(httpTimeout)
+                    .setSocketTimeout(httpTimeout)
+                    .build();
+            if (baseUri != null && baseUri.getHost() != null) {
+                httpManager = new BaseUriHttpManager(baseUri, httpManager);
+            }
+            builder.setHttpManager(httpManager);
             this.spotifyApi = builder.build();
         }
         return spotifyApi;
@@ -1,5 +1,5 @@
 open module rocks.voss.musicsync.plugins.toniebox {
-    requires static rocks.voss.musicsync.api;
+    requires rocks.voss.musicsync.api;
     requires rocks.voss.toniebox.api;
     requires lombok;
     requires org.apache.commons.lang3;
@@ -9,4 +9,8 @@ open module rocks.voss.musicsync.plugins.toniebox {
     uses rocks.voss.musicsync.api.SyncOutputPlugin;
     uses rocks.voss.musicsync.api.SyncTrack;
     uses rocks.voss.musicsync.api.SyncConnection;
+
+    provides rocks.voss.musicsync.api.SyncOutputPlugin with rocks.voss.musicsync.plugins.toniebox.TonieboxPlugin;
+
+    exports rocks.voss.musicsync.plugins.toniebox;
 }
@@ -0,0 +1,117 @@
+package rocks.voss.musicsync.plugins.toniebox;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import rocks.voss.musicsync.api.SyncTrack;
+import rocks.voss.toniebox.beans.toniebox.Chapter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Matches the tracks of a connection to the chapters of a tonie by the title a track is uploaded with. Chapters whose
+ * title does not look like an uploaded track were added by hand and are left alone.
+ */
+public class ChapterMatcher {
+    final private static Logger log = LogManager.getLogger(ChapterMatcher.class);
+    final private static Pattern MANAGED_CHAPTER = Pattern.compile("\\w{22}\\s-\\s.+\\s-\\s.+");
+
+    private final int threshold;
+
+    /**
+     * @param threshold milliseconds a chapter may differ from the duration of its track
+     */
+    public ChapterMatcher(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return title of the chapter the track is uploaded as
+     */
+    public String getTitle(SyncTrack syncTrack) {
+        StringBuilder title = new StringBuilder();
+        title.append(syncTrack.getId());
+        var artists = syncTrack.getArtists();
+        if (artists != null && artists.length > 0) {
+            title.append(" - ").append(artists[0]);
+        }
+        title.append(" - ").append(syncTrack.getName());
+        return StringUtils.left(title.toString(), 128);
+    }
+
+    /**
+     * @return true if the chapter was uploaded by the plugin
+     */
+    public boolean isManaged(Chapter chapter) {
+        return MANAGED_CHAPTER.matcher(chapter.getTitle()).matches();
+    }
+
+    /**
+     * @return chapters by their title, the first one wins for duplicate titles
+     */
+    public Map<String, Chapter> indexChapters(Chapter[] chapters) {
+        Map<String, Chapter> chapterIndex = new HashMap<>(chapters.length * 2);
+        for (Chapter chapter : chapters) {
+            chapterIndex.putIfAbsent(chapter.getTitle(), chapter);
+        }
+        return chapterIndex;
+    }
+
+    /**
+     * @param chapterIndex built by {@link #indexChapters(Chapter[])}
+     * @return chapter of the track, null if it is not on the tonie
+     */
+    public Chapter findChapter(Map<String, Chapter> chapterIndex, SyncTrack syncTrack) {
+        Chapter chapter = chapterIndex.get(getTitle(syncTrack));
+        if (chapter != null) {
+            log.debug("Chapter found: " + chapter.getTitle());
+        }
+        return chapter;
+    }
+
+    /**
+     * @param trackIndex tracks of the connection by their title
+     * @return true if the chapter was uploaded by the plugin and its track is gone, changed or was updated
+     */
+    public boolean isToBeRemoved(Map<String, SyncTrack> trackIndex, Chapter chapter) {
+        if (!isManaged(chapter)) {
+            return false;
+        }
+        SyncTrack syncTrack = trackIndex.get(chapter.getTitle());
+        if (syncTrack == null) {
+            return true;
+        }
+        log.debug("Chapter found: " + chapter.getTitle());
+        if (!isValid(syncTrack, chapter)) {
+            log.info("discrepancy between source & target is too high: " + syncTrack.getId());
+            return true;
+        }
+        if (syncTrack.isFresh()) {
+            log.info("Track was updated and needs reupload: " + syncTrack.getId());
+            return true;
+        }
+        log.info("Chapter is not to be removed: " + syncTrack.getId());
+        return false;
+    }
+
+    /**
+     * @return true if the duration of the chapter is within the threshold of the track
+     */
+    public boolean isValid(SyncTrack syncTrack, Chapter chapter) {
+        int chapterDuration = Math.round(chapter.getSeconds()) * 1000;
+        int diff = chapterDuration - syncTrack.getTrackDuration();
+
+        log.info(syncTrack + " length: " + syncTrack.getTrackDuration());
+        log.info(syncTrack + " chapter length: " + chapter.getSeconds() * 1000);
+        log.info(syncTrack + " calculated diff: " + diff);
+
+        if (diff > threshold || diff < -threshold) {
+            log.info(syncTrack + " is not valid");
+            return false;
+        }
+        log.debug("valid");
+        return true;
+    }
+}
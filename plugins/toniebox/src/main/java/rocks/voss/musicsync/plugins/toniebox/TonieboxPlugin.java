@@ -4,10 +4,15 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import rocks.voss.jsonhelper.JSONHelper;
+import rocks.voss.musicsync.api.PluginSchema;
 import rocks.voss.musicsync.api.SyncConnection;
+import rocks.voss.musicsync.api.SyncException;
 import rocks.voss.musicsync.api.SyncOutputPlugin;
+import rocks.voss.musicsync.api.SyncPlan;
+import rocks.voss.musicsync.api.SyncTargetTrack;
 import rocks.voss.musicsync.api.SyncTrack;
 import rocks.voss.musicsync.plugins.toniebox.config.PluginConfiguration;
+import rocks.voss.musicsync.plugins.toniebox.config.SyncConfiguration;
 import rocks.voss.toniebox.TonieHandler;
 import rocks.voss.toniebox.beans.toniebox.Chapter;
 import rocks.voss.toniebox.beans.toniebox.CreativeTonie;
@@ -17,17 +22,20 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
+@PluginSchema("toniebox")
 public class TonieboxPlugin implements SyncOutputPlugin {
     final private static Logger log = LogManager.getLogger(TonieboxPlugin.class);
 
     private List<Household> households;
     private TonieHandler tonieHandler;
-    private Map<SyncConnection, CreativeTonie> tonieCache = new HashMap<>();
+    private Map<SyncConnection, CreativeTonie> tonieCache = new ConcurrentHashMap<>();
     private PluginConfiguration pluginConfiguration;
+    private ChapterMatcher chapterMatcher;
 
     @Override
     public String helpScreen() {
@@ -36,32 +44,84 @@ public class TonieboxPlugin implements SyncOutputPlugin {
 
     @Override
     public void uploadTracks(SyncConnection connection, List<SyncTrack> syncTracks) {
-        for (SyncTrack syncTrack : syncTracks) {
-            uploadTrack(connection, syncTrack);
+        if (syncTracks.isEmpty()) {
+            return;
+        }
+        CreativeTonie creativeTonie = getCreativeTonie(connection);
+        if (creativeTonie == null) {
+            throw new SyncException("CreativeTonie not found");
+        }
+        // the tracks are committed together, so the tonie is written once per list instead of once per track
+        refresh(creativeTonie);
+        int uploaded = 0;
+        try {
+            for (SyncTrack syncTrack : syncTracks) {
+                upload(connection, creativeTonie, syncTrack);
+                uploaded++;
+            }
+        } catch (RuntimeException e) {
+            // the tracks in front of the failed one are committed, the failure keeps pointing to the failed track
+            if (uploaded > 0) {
+                try {
+                    commit(creativeTonie);
+                } catch (SyncException commitFailure) {
+                    commitFailure.addSuppressed(e);
+                    throw commitFailure;
+                }
+            }
+            throw e;
         }
+        commit(creativeTonie);
     }
 
     @Override
     public void uploadTrack(SyncConnection connection, SyncTrack syncTrack) {
+        CreativeTonie creativeTonie = getCreativeTonie(connection);
+        if (creativeTonie == null) {
+            throw new SyncException("CreativeTonie not found");
+        }
+        refresh(creativeTonie);
+        upload(connection, creativeTonie, syncTrack);
+        commit(creativeTonie);
+    }
+
+    private void upload(SyncConnection connection, CreativeTonie creativeTonie, SyncTrack syncTrack) {
         try {
-            CreativeTonie creativeTonie = getCreativeTonie(connection);
-            if (creativeTonie == null) {
-                log.error("CreativeTonie not found");
-                return;
-            }
             File f = new File(syncTrack.getPath());
             if (!f.exists() || !f.isFile() || f.isDirectory()) {
-                log.info("File does not exist: {}", f.getAbsolutePath());
-                return;
+                throw new SyncException(syncTrack, "File does not exist: " + f.getAbsolutePath());
             }
-            creativeTonie.refresh();
+            // the upload of the file cannot be throttled, so its bytes are acquired up front
+            connection.getThrottle().acquire(f.length());
             log.info("Uploading: " + syncTrack);
-            creativeTonie.uploadFile(getTrackTitle(syncTrack), f.getAbsolutePath());
+            creativeTonie.uploadFile(chapterMatcher.getTitle(syncTrack), f.getAbsolutePath());
+        } catch (SyncException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SyncException(syncTrack, "Interrupted while uploading track", e);
+        } catch (Exception e) {
+            throw new SyncException(syncTrack, "Could not upload track", e);
+        }
+    }
+
+    private void refresh(CreativeTonie creativeTonie) {
+        try {
+            creativeTonie.refresh();
+        } catch (Exception e) {
+            throw new SyncException("Could not refresh tonie " + creativeTonie.getName(), e);
+        }
+    }
+
+    /**
+     * A failed commit loses all tracks uploaded since the refresh, so it fails the connection instead of a track
+     */
+    private void commit(CreativeTonie creativeTonie) {
+        try {
             log.info("Committing tonie " + creativeTonie.getName());
             creativeTonie.commit();
-
         } catch (Exception e) {
-            log.error("Exception", e);
+            throw new SyncException("Could not commit tonie " + creativeTonie.getName(), e);
         }
     }
 
@@ -74,15 +134,15 @@ public class TonieboxPlugin implements SyncOutputPlugin {
                 return false;
             }
             for (Chapter chapter : creativeTonie.getChapters()) {
-                if (StringUtils.equals(chapter.getTitle(), getTrackTitle(syncTrack))) {
+                if (StringUtils.equals(chapter.getTitle(), chapterMatcher.getTitle(syncTrack))) {
                     log.debug("Track found: " + chapter.getTitle());
-                    return isValidTrack(syncTrack, chapter);
+                    return chapterMatcher.isValid(syncTrack, chapter);
                 }
             }
         } catch (Exception e) {
             log.error("Exception", e);
         }
-        log.debug("Track not found: " + getTrackTitle(syncTrack));
+        log.debug("Track not found: " + chapterMatcher.getTitle(syncTrack));
         return false;
     }
 
@@ -95,15 +155,15 @@ public class TonieboxPlugin implements SyncOutputPlugin {
         }
 
         try {
-            List<Chapter> chapters = new ArrayList<>(creativeTonie.getChapters().length);
-
-            if (pluginConfiguration.getSortMode() >= 0) {
-                addKnown(syncTracks, creativeTonie, chapters);
-                addUnknown(creativeTonie, chapters);
-            } else if (pluginConfiguration.getSortMode() < 0) {
-                addUnknown(creativeTonie, chapters);
-                addKnown(syncTracks, creativeTonie, chapters);
+            Map<String, Chapter> chapterIndex = chapterMatcher.indexChapters(creativeTonie.getChapters());
+            List<Chapter> known = new ArrayList<>(syncTracks.size());
+            for (SyncTrack syncTrack : syncTracks) {
+                Chapter chapter = chapterMatcher.findChapter(chapterIndex, syncTrack);
+                if (chapter != null) {
+                    known.add(chapter);
+                }
             }
+            List<Chapter> chapters = sortChapters(creativeTonie, known);
             log.info("Chapters after ordering: " + chapters.toString());
             creativeTonie.setChapters(chapters.toArray(new Chapter[]{}));
             log.info("Committing tonie " + creativeTonie.getName());
@@ -113,20 +173,24 @@ public class TonieboxPlugin implements SyncOutputPlugin {
         }
     }
 
-    private void addKnown(List<SyncTrack> syncTracks, CreativeTonie creativeTonie, List<Chapter> chapters) {
-        log.debug("Adding known tracks");
-        for (SyncTrack syncTrack : syncTracks) {
-            Chapter chapter = findChapter(creativeTonie.getChapters(), syncTrack);
-            if (chapter != null) {
-                chapters.add(chapter);
-            }
+    private List<Chapter> sortChapters(CreativeTonie creativeTonie, List<Chapter> known) {
+        List<Chapter> chapters = new ArrayList<>(creativeTonie.getChapters().length);
+        if (pluginConfiguration.getSortMode() >= 0) {
+            log.debug("Adding known tracks");
+            chapters.addAll(known);
+            addUnknown(creativeTonie, chapters);
+        } else {
+            addUnknown(creativeTonie, chapters);
+            log.debug("Adding known tracks");
+            chapters.addAll(known);
         }
+        return chapters;
     }
 
     private void addUnknown(CreativeTonie creativeTonie, List<Chapter> chapters) {
         log.info("Adding unknown tracks");
         for (Chapter chapter : creativeTonie.getChapters()) {
-            if (!Pattern.matches("\\w{22}\\s-\\s.+\\s-\\s.+", chapter.getTitle())) {
+            if (!chapterMatcher.isManaged(chapter)) {
                 chapters.add(chapter);
             }
         }
@@ -141,10 +205,15 @@ public class TonieboxPlugin implements SyncOutputPlugin {
                 return;
             }
 
+            Map<String, SyncTrack> trackIndex = new HashMap<>(syncTracks.size() * 2);
+            for (SyncTrack syncTrack : syncTracks) {
+                trackIndex.putIfAbsent(chapterMatcher.getTitle(syncTrack), syncTrack);
+            }
+
             List<Chapter> newChapters = new ArrayList<>(creativeTonie.getChapters().length);
             for (Chapter chapter : creativeTonie.getChapters()) {
                 log.debug("Chapter: " + chapter.getTitle());
-                if (!isChapterToBeRemoved(syncTracks, chapter)) {
+                if (!chapterMatcher.isToBeRemoved(trackIndex, chapter)) {
                     log.debug("Chapter: " + chapter.getTitle() + " not to be deleted");
                     newChapters.add(chapter);
                 }
@@ -159,6 +228,72 @@ public class TonieboxPlugin implements SyncOutputPlugin {
         }
     }
 
+    @Override
+    public List<SyncTargetTrack> getTargetTracks(SyncConnection connection) {
+        CreativeTonie creativeTonie = getCreativeTonie(connection);
+        if (creativeTonie == null) {
+            log.debug("CreativeTonie not found");
+            return null;
+        }
+
+        Chapter[] chapters = creativeTonie.getChapters();
+        List<SyncTargetTrack> targetTracks = new ArrayList<>(chapters.length);
+        for (Chapter chapter : chapters) {
+            if (chapterMatcher.isManaged(chapter)) {
+                targetTracks.add(new SyncTargetTrack(chapter.getTitle(), Math.round(chapter.getSeconds()) * 1000, chapter));
+            }
+        }
+        return targetTracks;
+    }
+
+    @Override
+    public String getTrackKey(SyncTrack syncTrack) {
+        return chapterMatcher.getTitle(syncTrack);
+    }
+
+    @Override
+    public boolean isTargetTrackValid(SyncConnection connection, SyncTrack syncTrack, SyncTargetTrack targetTrack) {
+        return chapterMatcher.isValid(syncTrack, (Chapter) targetTrack.getTarget());
+    }
+
+    @Override
+    public void applySyncPlan(SyncConnection connection, SyncPlan plan) {
+        try {
+            CreativeTonie creativeTonie = getCreativeTonie(connection);
+            if (creativeTonie == null) {
+                throw new SyncException("CreativeTonie not found");
+            }
+
+            Map<Chapter, Boolean> removed = new IdentityHashMap<>(plan.getToRemove().size() * 2);
+            for (SyncTargetTrack targetTrack : plan.getToRemove()) {
+                removed.put((Chapter) targetTrack.getTarget(), Boolean.TRUE);
+            }
+            Map<String, Chapter> chapterIndex = new HashMap<>();
+            for (Chapter chapter : creativeTonie.getChapters()) {
+                if (!removed.containsKey(chapter)) {
+                    chapterIndex.putIfAbsent(chapter.getTitle(), chapter);
+                }
+            }
+
+            List<Chapter> known = new ArrayList<>(plan.getUnchanged().size());
+            for (SyncTrack syncTrack : plan.getUnchanged()) {
+                Chapter chapter = chapterMatcher.findChapter(chapterIndex, syncTrack);
+                if (chapter != null) {
+                    known.add(chapter);
+                }
+            }
+            List<Chapter> chapters = sortChapters(creativeTonie, known);
+            log.info("Chapters after applying plan: " + chapters.toString());
+            creativeTonie.setChapters(chapters.toArray(new Chapter[]{}));
+            log.info("Committing tonie " + creativeTonie.getName());
+            creativeTonie.commit();
+        } catch (SyncException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SyncException("Could not apply sync plan to tonie", e);
+        }
+    }
+
     @Override
     public void establishConnection() {
         openConnection();
@@ -168,6 +303,7 @@ public class TonieboxPlugin implements SyncOutputPlugin {
     public void init(Object configuration) {
         try {
             pluginConfiguration = JSONHelper.createBean(PluginConfiguration.class, configuration);
+            chapterMatcher = new ChapterMatcher(pluginConfiguration.getThreshold());
         } catch (IOException e) {
             log.error(e);
         }
@@ -183,6 +319,19 @@ public class TonieboxPlugin implements SyncOutputPlugin {
         return "toniebox";
     }
 
+    @Override
+    public Class<?> getConnectionConfigurationClass() {
+        return SyncConfiguration.class;
+    }
+
+    @Override
+    public void validateConnectionConfiguration(Object configuration) {
+        SyncConfiguration syncConfiguration = (SyncConfiguration) configuration;
+        if (StringUtils.isBlank(syncConfiguration.getHousehold()) || StringUtils.isBlank(syncConfiguration.getTonie())) {
+            throw new IllegalArgumentException("Household and tonie have to be configured");
+        }
+    }
+
     @Override
     public void closeConnection() {
         try {
@@ -232,63 +381,4 @@ public class TonieboxPlugin implements SyncOutputPlugin {
         }
         return tonieCache.get(syncConnection);
     }
-
-    private String getTrackTitle(SyncTrack syncTrack) {
-        StringBuilder title = new StringBuilder();
-        title.append(syncTrack.getId());
-        var artists = syncTrack.getArtists();
-        if (artists != null && artists.length > 0) {
-            title.append(" - ").append(artists[0]);
-        }
-        title.append(" - ").append(syncTrack.getName());
-        return StringUtils.left(title.toString(), 128);
-    }
-
-    private boolean isChapterToBeRemoved(List<SyncTrack> syncTracks, Chapter chapter) {
-        if (!Pattern.matches("\\w{22}\\s-\\s.+\\s-\\s.+", chapter.getTitle())) {
-            return false;
-        }
-        for (SyncTrack syncTrack : syncTracks) {
-            if (StringUtils.equals(chapter.getTitle(), getTrackTitle(syncTrack))) {
-                log.debug("Chapter found: " + chapter.getTitle());
-                if (!isValidTrack(syncTrack, chapter)) {
-                    log.info("discrepancy between source & target is too high: " + syncTrack.getId());
-                    return true;
-                }
-                if (syncTrack.isFresh()) {
-                    log.info("Track was updated and needs reupload: " + syncTrack.getId());
-                    return true;
-                }
-                log.info("Chapter is not to be removed: " + syncTrack.getId());
-                return false;
-            }
-        }
-        return true;
-    }
-
-    private Chapter findChapter(Chapter[] chapters, SyncTrack syncTrack) {
-        for (Chapter chapter : chapters) {
-            if (StringUtils.equals(chapter.getTitle(), getTrackTitle(syncTrack))) {
-                log.debug("Chapter found: " + chapter.getTitle());
-                return chapter;
-            }
-        }
-        return null;
-    }
-
-    private boolean isValidTrack(SyncTrack syncTrack, Chapter chapter) {
-        int chapterDuration = Math.round(chapter.getSeconds()) * 1000;
-        int diff = chapterDuration - syncTrack.getTrackDuration();
-
-        log.info(syncTrack + " length: " + syncTrack.getTrackDuration());
-        log.info(syncTrack + " chapter length: " + chapter.getSeconds() * 1000);
-        log.info(syncTrack + " calculated diff: " + diff);
-
-        if (diff > pluginConfiguration.getThreshold() || diff < -pluginConfiguration.getThreshold()) {
-            log.info(syncTrack + " is not valid");
-            return false;
-        }
-        log.debug("valid");
-        return true;
-    }
 }